@@ -0,0 +1,122 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.fosstrak.hal.HardwareException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.asisoft.caen.host.service.CaenRFIDProxyClient;
+import com.asisoft.caen.host.service.CaenRFIDProxySimulator;
+
+/**
+ * Startup time of CaenTCPController against a CaenRFIDProxySimulator
+ * published in the same JVM: a new proxy client, a new controller and a
+ * reset of a running controller. The first client of the JVM, which parses
+ * the WSDL, is measured by running firstClient with -bm ss and many forks.
+ *
+ * @author David Figueroa
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ControllerStartupBenchmark {
+
+	private static final String ENDPOINT = "http://localhost:18888/caenrfid-proxy";
+
+	private CaenRFIDProxySimulator simulator;
+
+	/**
+	 * A running controller, only created for the benchmarks resetting it so
+	 * that firstClient still builds the first client of the JVM
+	 */
+	@State(Scope.Benchmark)
+	public static class Running {
+
+		CaenTCPController controller;
+
+		@Setup
+		public void setUp(ControllerStartupBenchmark benchmark) {
+			controller = new CaenTCPController("bench", "/props/SimulatedCaenTCPController_packed.xml");
+		}
+
+		@TearDown
+		public void tearDown() {
+			controller.shutdown();
+		}
+	}
+
+	/**
+	 * The controller created by an invocation, shut down after it
+	 */
+	@State(Scope.Thread)
+	public static class Created {
+
+		CaenTCPController controller;
+
+		@TearDown(org.openjdk.jmh.annotations.Level.Invocation)
+		public void tearDown() {
+			if (controller != null) {
+				controller.shutdown();
+				controller = null;
+			}
+		}
+	}
+
+	@Setup
+	public void setUp() throws Exception {
+
+		Logger.getLogger("org.fosstrak").setLevel(Level.WARN);
+
+		simulator = new CaenRFIDProxySimulator();
+		simulator.setPopulation(10);
+		simulator.publish(ENDPOINT);
+	}
+
+	@TearDown
+	public void tearDown() {
+		simulator.stop();
+	}
+
+	@Benchmark
+	public CaenRFIDProxyClient client() {
+		return new CaenRFIDProxyClient(ENDPOINT);
+	}
+
+	@Benchmark
+	public CaenTCPController controller(Created created) {
+		created.controller = new CaenTCPController("bench", "/props/SimulatedCaenTCPController_packed.xml");
+		return created.controller;
+	}
+
+	@Benchmark
+	public void reset(Running running) throws HardwareException {
+		running.controller.reset();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@Warmup(iterations = 0)
+	@Measurement(iterations = 1)
+	@Fork(10)
+	public String firstClient() {
+		return new CaenRFIDProxyClient(ENDPOINT).getClientPort().getVersion();
+	}
+}
@@ -0,0 +1,95 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.fosstrak.hal.util.ByteBlock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost per tag of keying the current inventory by hex string, as the
+ * controllers did, against keying it by EpcKey. Every operation is one tag;
+ * with -prof gc, gc.alloc.rate.norm is the allocation per tag.
+ *
+ * @author David Figueroa
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EpcKeyBenchmark {
+
+	private static final int TAGS = 1000;
+
+	private byte[][] ids;
+
+	private final Map<String, byte[]> byHex = new HashMap<String, byte[]>();
+	private final Map<EpcKey, byte[]> byKey = new HashMap<EpcKey, byte[]>();
+
+	@Setup
+	public void setUp() {
+
+		Random random = new Random(42);
+		ids = new byte[TAGS][SimulatedCaenUSBController.EPC_LENGTH];
+
+		for (byte[] id : ids) {
+			random.nextBytes(id);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TAGS)
+	public Map<String, byte[]> hexString() {
+
+		for (byte[] id : ids) {
+			byHex.put(ByteBlock.byteArrayToHexString(id), id);
+		}
+
+		return byHex;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TAGS)
+	public Map<EpcKey, byte[]> epcKey() {
+
+		for (byte[] id : ids) {
+			byKey.put(EpcKey.of(id), id);
+		}
+
+		return byKey;
+	}
+
+	/**
+	 * Keys of the tags and their hex ids, as a plain identify reports them
+	 */
+	@Benchmark
+	@OperationsPerInvocation(TAGS)
+	public String[] epcKeyReported() {
+
+		EpcKey[] keys = new EpcKey[ids.length];
+
+		for (int i = 0; i < ids.length; i++) {
+			keys[i] = EpcKey.of(ids[i]);
+			byKey.put(keys[i], ids[i]);
+		}
+
+		return EpcKey.toHexStrings(keys);
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.fosstrack.hal.impl.caen.connector.FrameDecoder;
+import org.fosstrack.hal.impl.caen.connector.LengthPrefixedFrameDecoder;
+import org.fosstrack.hal.impl.caen.connector.LineFrameDecoder;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Receive path of TCPRawSocketConnector: a stream of device messages read in
+ * socket sized chunks and split into frames. The frame decoders of the
+ * non-blocking mode hand views on a direct buffer to the listener; readLine
+ * is the blocking mode, decoding every message into a String with the
+ * platform charset.
+ *
+ * The score is in messages per second; the bytes counter reports the bytes
+ * per second next to it. Run with -prof gc for the allocation per message.
+ *
+ * @author David Figueroa
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameDecoderBenchmark {
+
+	private static final int MESSAGES = 1000;
+
+	/**
+	 * Bytes returned by a socket read
+	 */
+	private static final int CHUNK = 8192;
+
+	/**
+	 * Payload bytes of a message, 12 is a 96 bits EPC
+	 */
+	@Param({ "12", "64", "512" })
+	public int messageSize;
+
+	private byte[] lines;
+	private byte[] prefixed;
+
+	private ByteBuffer readBuffer;
+
+	private FrameDecoder lineDecoder;
+	private FrameDecoder prefixedDecoder;
+
+	/**
+	 * Bytes received, reported by JMH as a rate
+	 */
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class ByteCounter {
+
+		public long bytes;
+	}
+
+	@Setup
+	public void setUp() {
+
+		Random random = new Random(42);
+
+		ByteBuffer lineStream = ByteBuffer.allocate(MESSAGES * (messageSize + 1));
+		ByteBuffer prefixedStream = ByteBuffer.allocate(MESSAGES * (messageSize + 4));
+		byte[] payload = new byte[messageSize];
+
+		for (int i = 0; i < MESSAGES; i++) {
+
+			random.nextBytes(payload);
+
+			// no end of line inside the payload of the line stream
+			for (int j = 0; j < payload.length; j++) {
+				if (payload[j] == '\n' || payload[j] == '\r') {
+					payload[j] = ' ';
+				}
+			}
+
+			lineStream.put(payload).put((byte) '\n');
+			prefixedStream.putInt(payload.length).put(payload);
+		}
+
+		lines = lineStream.array();
+		prefixed = prefixedStream.array();
+
+		readBuffer = ByteBuffer.allocateDirect(CHUNK + 4 + messageSize);
+
+		lineDecoder = new LineFrameDecoder();
+		prefixedDecoder = new LengthPrefixedFrameDecoder();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(MESSAGES)
+	public void lineFrames(Blackhole blackhole, ByteCounter counter) throws IOException {
+		decode(lineDecoder, lines, blackhole);
+		counter.bytes += lines.length;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(MESSAGES)
+	public void lengthPrefixedFrames(Blackhole blackhole, ByteCounter counter) throws IOException {
+		decode(prefixedDecoder, prefixed, blackhole);
+		counter.bytes += prefixed.length;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(MESSAGES)
+	public void readLine(Blackhole blackhole, ByteCounter counter) throws IOException {
+
+		BufferedReader in = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(lines)));
+		String line;
+
+		while ((line = in.readLine()) != null) {
+			blackhole.consume(line);
+		}
+
+		counter.bytes += lines.length;
+	}
+
+	private void decode(FrameDecoder decoder, byte[] stream, final Blackhole blackhole) throws IOException {
+
+		FrameDecoder.Listener listener = new FrameDecoder.Listener() {
+
+			public void frameReceived(ByteBuffer frame) {
+				// touches the first byte as a consumer would
+				blackhole.consume(frame.get(frame.position()));
+			}
+		};
+
+		for (int offset = 0; offset < stream.length; offset += CHUNK) {
+
+			readBuffer.put(stream, offset, Math.min(CHUNK, stream.length - offset));
+			readBuffer.flip();
+			decoder.decode(readBuffer, listener);
+			readBuffer.compact();
+		}
+	}
+}
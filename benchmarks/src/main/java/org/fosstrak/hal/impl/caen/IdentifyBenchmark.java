@@ -0,0 +1,105 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.fosstrak.hal.HardwareException;
+import org.fosstrak.hal.Observation;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput and latency of identify against a simulated reader, from the
+ * inventory round to the observation, for growing tag populations.
+ *
+ * The tags counter reports tags per second next to the identify rate; its
+ * inverse is the time spent per tag. Run with -prof gc for the allocation,
+ * gc.alloc.rate.norm divided by the tag count is the allocation per tag.
+ *
+ * @author David Figueroa
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdentifyBenchmark {
+
+	@Param({ "10", "100", "1000", "10000", "50000" })
+	public int tags;
+
+	/**
+	 * Configuration of the controller: plain, delta (deltaIdentify) or
+	 * presence (presence smoothing over 3 rounds)
+	 */
+	@Param({ "plain", "delta", "presence" })
+	public String mode;
+
+	private SimulatedCaenUSBController controller;
+	private String[] readPointNames;
+
+	/**
+	 * Tags handled, reported by JMH as a rate
+	 */
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class TagCounter {
+
+		public long tags;
+	}
+
+	@Setup
+	public void setUp() throws HardwareException {
+
+		// per round debug logging would dominate the measurement
+		Logger.getLogger("org.fosstrak").setLevel(Level.WARN);
+
+		controller = new SimulatedCaenUSBController("bench", "/props/SimulatedCaenUSBController_" + mode + ".xml");
+		controller.setPopulation(tags, 42);
+		readPointNames = controller.getReadPointNames();
+
+		// first round outside of the measurement, delta and presence are
+		// measured in their steady state
+		controller.identify(readPointNames);
+	}
+
+	@TearDown
+	public void tearDown() {
+		controller.shutdown();
+	}
+
+	@Benchmark
+	public Observation[] identify(TagCounter counter) throws HardwareException {
+
+		Observation[] observations = controller.identify(readPointNames);
+		counter.tags += tags;
+
+		return observations;
+	}
+
+	@Benchmark
+	public List<EpcInventoryItem> getInventory(TagCounter counter) throws HardwareException {
+
+		List<EpcInventoryItem> inventory = controller.getInventory(readPointNames[0]);
+		counter.tags += tags;
+
+		return inventory;
+	}
+}
@@ -0,0 +1,125 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.DatatypeConverter;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
+
+import net.java.dev.jaxb.array.StringArray;
+
+import org.fosstrak.hal.util.ByteBlock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.asisoft.caen.host.service.PackedInventory;
+
+/**
+ * Client side parse of an inventory as the StringArray of getInventory,
+ * against the base64 packed bytes of getInventoryPacked, both from their
+ * serialized form up to the tag keys. The payload sizes are printed at setup.
+ *
+ * @author David Figueroa
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PackedInventoryBenchmark {
+
+	private static final QName RETURN = new QName("return");
+
+	@Param({ "10", "100", "1000", "10000" })
+	public int tags;
+
+	private Unmarshaller unmarshaller;
+
+	private String xml;
+	private String base64;
+
+	@Setup
+	public void setUp() throws JAXBException {
+
+		Random random = new Random(42);
+		List<byte[]> ids = new ArrayList<byte[]>();
+		StringArray inventory = new StringArray();
+
+		for (int i = 0; i < tags; i++) {
+			byte[] id = new byte[SimulatedCaenUSBController.EPC_LENGTH];
+			random.nextBytes(id);
+			ids.add(id);
+			inventory.getItem().add(ByteBlock.byteArrayToHexString(id));
+		}
+
+		JAXBContext context = JAXBContext.newInstance(StringArray.class);
+		Marshaller marshaller = context.createMarshaller();
+		marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+
+		StringWriter writer = new StringWriter();
+		marshaller.marshal(new JAXBElement<StringArray>(RETURN, StringArray.class, inventory), writer);
+		xml = writer.toString();
+
+		base64 = "<return>" + DatatypeConverter.printBase64Binary(PackedInventory.pack(ids)) + "</return>";
+
+		unmarshaller = context.createUnmarshaller();
+
+		System.out.println("payload for " + tags + " tags: StringArray " + xml.length() + " bytes, packed "
+				+ base64.length() + " bytes");
+	}
+
+	@Benchmark
+	public EpcKey[] stringArray() throws JAXBException {
+
+		StringArray inventory = unmarshaller.unmarshal(new StreamSource(new StringReader(xml)), StringArray.class)
+				.getValue();
+		List<String> items = inventory.getItem();
+		EpcKey[] keys = new EpcKey[items.size()];
+
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = EpcKey.parse(items.get(i));
+		}
+
+		return keys;
+	}
+
+	@Benchmark
+	public EpcKey[] packed() {
+
+		// the element around the base64 text is stripped as a SOAP stack would
+		byte[] packed = DatatypeConverter.parseBase64Binary(base64.substring(8, base64.length() - 9));
+		EpcKey[] keys = new EpcKey[PackedInventory.getCount(packed)];
+		int offset = PackedInventory.HEADER_LENGTH;
+
+		for (int i = 0; i < keys.length; i++) {
+			int length = PackedInventory.getIdLength(packed, offset);
+			keys[i] = EpcKey.of(packed, offset + 1, length);
+			offset += 1 + length;
+		}
+
+		return keys;
+	}
+}
@@ -0,0 +1,87 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.asisoft.caen.host.service.CaenRFIDProxy;
+import com.asisoft.caen.host.service.CaenRFIDProxyClient;
+import com.asisoft.caen.host.service.CaenRFIDProxySimulator;
+
+/**
+ * Per call latency of the CaenRFIDProxy client with warm connections
+ * (keep-alive, the connection is reused) and cold ones (a new connection per
+ * call), against a CaenRFIDProxySimulator published in the same JVM.
+ *
+ * @author David Figueroa
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.AverageTime, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProxyConnectionBenchmark {
+
+	private static final String ENDPOINT = "http://localhost:18889/caenrfid-proxy";
+
+	/**
+	 * warm: keep-alive, cold: connection closed after each call
+	 */
+	@Param({ "warm", "cold" })
+	public String connection;
+
+	@Param({ "10", "1000" })
+	public int tags;
+
+	@Param({ "false", "true" })
+	public boolean compression;
+
+	private CaenRFIDProxySimulator simulator;
+	private CaenRFIDProxy port;
+
+	@Setup
+	public void setUp() throws Exception {
+
+		simulator = new CaenRFIDProxySimulator();
+		simulator.setPopulation(tags);
+		simulator.publish(ENDPOINT);
+
+		CaenRFIDProxyClient client = new CaenRFIDProxyClient(ENDPOINT);
+		client.setKeepAlive("warm".equals(connection));
+		client.setCompression(compression);
+		client.setConnectTimeout(5000);
+		client.setRequestTimeout(10000);
+
+		port = client.getClientPort();
+	}
+
+	@TearDown
+	public void tearDown() {
+		simulator.stop();
+	}
+
+	@Benchmark
+	public String getVersion() {
+		return port.getVersion();
+	}
+
+	@Benchmark
+	public byte[] getInventoryPacked() {
+		return port.getInventoryPacked();
+	}
+}
@@ -0,0 +1,81 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.util.Random;
+
+import com.caen.RFIDLibrary.CAENRFIDException;
+
+/**
+ * CaenUSBController whose reader is simulated in memory: connecting does not
+ * open any port, and every inventory round returns the same synthetic tag
+ * population. The rest of the identify pipeline is the one of the real
+ * controller, so it can be measured without hardware.
+ *
+ * @author David Figueroa
+ */
+public class SimulatedCaenUSBController extends CaenUSBController {
+
+	/**
+	 * Bytes of the simulated EPCs, 96 bit
+	 */
+	public static final int EPC_LENGTH = 12;
+
+	private volatile byte[][] population = new byte[0][];
+
+	public SimulatedCaenUSBController(String halName, String configFile) {
+		super(halName, configFile);
+	}
+
+	/**
+	 * Replaces the simulated tag population
+	 *
+	 * @param tags
+	 *            number of tags seen in every round
+	 * @param seed
+	 *            seed of the random EPCs, so runs can be compared
+	 */
+	public void setPopulation(int tags, long seed) {
+
+		Random random = new Random(seed);
+		byte[][] ids = new byte[tags][EPC_LENGTH];
+
+		for (byte[] id : ids) {
+			random.nextBytes(id);
+			// SGTIN-96 header
+			id[0] = 0x30;
+		}
+
+		population = ids;
+	}
+
+	/**
+	 * @return number of tags seen in every round
+	 */
+	public int getPopulationSize() {
+		return population.length;
+	}
+
+	protected void connectReader(String comPort) throws CAENRFIDException {
+	}
+
+	protected void disconnectReader() throws CAENRFIDException {
+	}
+
+	/**
+	 * Returns fresh copies of the population, as the CAEN library hands out a
+	 * new id array per tag and round
+	 */
+	protected byte[][] inventoryRound(String sourceName) throws CAENRFIDException {
+
+		byte[][] ids = population;
+		byte[][] round = new byte[ids.length][];
+
+		for (int i = 0; i < ids.length; i++) {
+			round[i] = ids[i].clone();
+		}
+
+		return round;
+	}
+}
@@ -0,0 +1,73 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.util.concurrent.TimeUnit;
+
+import org.fosstrak.hal.MemoryBankDescriptor;
+import org.fosstrak.hal.MemoryDescriptor;
+import org.fosstrak.hal.TagDescriptor;
+import org.fosstrak.hal.transponder.EPCTransponderModel;
+import org.fosstrak.hal.transponder.IDType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost per tag of the tag descriptor: built for every tag, as identify did,
+ * against looked up in the TagDescriptorCache.
+ *
+ * @author David Figueroa
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TagDescriptorBenchmark {
+
+	private static final String ID_TYPES_CONFIG = "/props/IDTypes_default.xml";
+	private static final String TRANSPONDER_MODELS_CONFIG = "/props/EPCTransponderModels_default.xml";
+
+	private EPCTransponderModel tagModel;
+	private final TagDescriptorCache cache = new TagDescriptorCache();
+
+	@Setup
+	public void setUp() {
+
+		tagModel = EPCTransponderModel.getEpcTrasponderModel(new byte[] { 0, 0, 0, 0 }, TRANSPONDER_MODELS_CONFIG);
+		cache.invalidate(ID_TYPES_CONFIG);
+	}
+
+	@Benchmark
+	public TagDescriptor build() {
+
+		IDType idType = IDType.getIdType("EPC", ID_TYPES_CONFIG);
+
+		MemoryBankDescriptor[] memoryBankDescriptors = new MemoryBankDescriptor[4];
+		memoryBankDescriptors[0] = new MemoryBankDescriptor(tagModel.getReservedSize(),
+				tagModel.getReservedReadable(), tagModel.getReservedWriteable());
+		memoryBankDescriptors[1] = new MemoryBankDescriptor(tagModel.getEpcSize(), tagModel.getEpcReadable(),
+				tagModel.getEpcWriteable());
+		memoryBankDescriptors[2] = new MemoryBankDescriptor(tagModel.getTidSize(), tagModel.getTidReadable(),
+				tagModel.getTidWriteable());
+		memoryBankDescriptors[3] = new MemoryBankDescriptor(tagModel.getUserSize(), tagModel.getUserReadable(),
+				tagModel.getUserWriteable());
+
+		return new TagDescriptor(idType, new MemoryDescriptor(memoryBankDescriptors));
+	}
+
+	@Benchmark
+	public TagDescriptor cached() {
+		return cache.getTagDescriptor(tagModel);
+	}
+}
@@ -0,0 +1,95 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.fosstrak.hal.HardwareException;
+import org.fosstrak.hal.Observation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.asisoft.caen.host.service.CaenRFIDProxySimulator;
+
+/**
+ * Identify of CaenTCPController end to end, SOAP included, against a
+ * CaenRFIDProxySimulator published in the same JVM.
+ *
+ * @author David Figueroa
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TcpIdentifyBenchmark {
+
+	private static final String ENDPOINT = "http://localhost:18888/caenrfid-proxy";
+
+	@Param({ "10", "100", "1000", "10000" })
+	public int tags;
+
+	/**
+	 * Fraction of the tags replaced between two inventories
+	 */
+	@Param({ "0", "0.1" })
+	public double churnRate;
+
+	/**
+	 * Simulated response time of the host in milliseconds
+	 */
+	@Param({ "0", "5" })
+	public long latency;
+
+	/**
+	 * Inventory operation used by the controller: incremental
+	 * (getInventoryChanges), packed
+	 * (getInventoryPacked) or hex (getInventory)
+	 */
+	@Param({ "incremental", "packed", "hex" })
+	public String encoding;
+
+	private CaenRFIDProxySimulator simulator;
+	private CaenTCPController controller;
+	private String[] readPointNames;
+
+	@Setup
+	public void setUp() throws Exception {
+
+		Logger.getLogger("org.fosstrak").setLevel(Level.WARN);
+
+		simulator = new CaenRFIDProxySimulator();
+		simulator.setPopulation(tags);
+		simulator.setChurnRate(churnRate);
+		simulator.setLatency(latency, 0);
+		simulator.publish(ENDPOINT);
+
+		controller = new CaenTCPController("bench", "/props/SimulatedCaenTCPController_" + encoding + ".xml");
+		readPointNames = controller.getReadPointNames();
+	}
+
+	@TearDown
+	public void tearDown() {
+		controller.shutdown();
+		simulator.stop();
+	}
+
+	@Benchmark
+	public Observation[] identify() throws HardwareException {
+		return controller.identify(readPointNames);
+	}
+}
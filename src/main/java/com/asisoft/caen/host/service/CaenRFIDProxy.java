@@ -1,6 +1,7 @@
 package com.asisoft.caen.host.service;
 
 import javax.jws.WebMethod;
+import javax.jws.WebParam;
 import javax.jws.WebResult;
 import javax.jws.WebService;
 import javax.jws.soap.SOAPBinding;
@@ -25,4 +26,26 @@ public interface CaenRFIDProxy {
     @WebResult(name = "return", targetNamespace = "http://service.host.caen.asisoft.com/", partName = "return")
     @WebMethod
     public net.java.dev.jaxb.array.StringArray getInventory();
+
+    /**
+     * Same inventory as getInventory, packed as described in
+     * {@link PackedInventory}
+     */
+    @WebResult(name = "return", targetNamespace = "http://service.host.caen.asisoft.com/", partName = "return")
+    @WebMethod
+    public byte[] getInventoryPacked();
+
+    /**
+     * Changes of the inventory since the given generation, as described in
+     * {@link InventoryChanges}
+     * 
+     * @param generation
+     *            last generation seen by the caller, -1 for a full inventory
+     */
+    @WebResult(name = "return", targetNamespace = "http://service.host.caen.asisoft.com/", partName = "return")
+    @WebMethod
+    public byte[] getInventoryChanges(
+        @WebParam(name = "generation", partName = "generation")
+        long generation
+    );
 }
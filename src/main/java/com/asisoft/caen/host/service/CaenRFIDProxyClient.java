@@ -1,10 +1,14 @@
 package com.asisoft.caen.host.service;
 
 import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.namespace.QName;
 import javax.xml.ws.BindingProvider;
+import javax.xml.ws.handler.MessageContext;
 
 import net.java.dev.jaxb.array.StringArray;
 
@@ -17,6 +21,26 @@ public final class CaenRFIDProxyClient {
 
 	private static final QName SERVICE_NAME = new QName("http://service.host.caen.asisoft.com/", "CaenRFIDProxyService");
 
+	/**
+	 * Request context properties of the connect timeout, for the JAX-WS RI,
+	 * the RI bundled with the JDK and CXF
+	 */
+	private static final String[] CONNECT_TIMEOUT_PROPERTIES = { "com.sun.xml.ws.connect.timeout",
+			"com.sun.xml.internal.ws.connect.timeout", "javax.xml.ws.client.connectionTimeout" };
+
+	/**
+	 * Request context properties of the request (read) timeout
+	 */
+	private static final String[] REQUEST_TIMEOUT_PROPERTIES = { "com.sun.xml.ws.request.timeout",
+			"com.sun.xml.internal.ws.request.timeout", "javax.xml.ws.client.receiveTimeout" };
+
+	/**
+	 * Service built from the local WSDL, shared by all the clients of the JVM.
+	 * Parsing the WSDL and building the service model is most of the cost of
+	 * a new client
+	 */
+	private static CaenRFIDProxyService service;
+
 	/**
      * 
      */
@@ -27,11 +51,12 @@ public final class CaenRFIDProxyClient {
      */
 	public CaenRFIDProxyClient(String endpoint) {
 
-		URL wsdlURL = CaenRFIDProxyService.WSDL_LOCATION;
-		wsdlURL = getClass().getResource("/props/CaenProxyService.wsdl");
+		CaenRFIDProxyService ss = getService();
 
-		CaenRFIDProxyService ss = new CaenRFIDProxyService(wsdlURL, SERVICE_NAME);
-		port = ss.getCaenRFIDProxyPort();
+		// the port has its own request context, it is not shared
+		synchronized (ss) {
+			port = ss.getCaenRFIDProxyPort();
+		}
 
 		/*
 		 * Setting the endpoint address for the web service
@@ -40,6 +65,19 @@ public final class CaenRFIDProxyClient {
 		bp.getRequestContext().put(BindingProvider.ENDPOINT_ADDRESS_PROPERTY, endpoint);
 	}
 
+	/**
+	 * @return the service of the JVM, built on first use
+	 */
+	private static synchronized CaenRFIDProxyService getService() {
+
+		if (service == null) {
+			URL wsdlURL = CaenRFIDProxyClient.class.getResource("/props/CaenProxyService.wsdl");
+			service = new CaenRFIDProxyService(wsdlURL, SERVICE_NAME);
+		}
+
+		return service;
+	}
+
 	/**
 	 * Returns the proxy port reference that allows to invoke the remote methods
 	 * 
@@ -49,6 +87,83 @@ public final class CaenRFIDProxyClient {
 		return port;
 	}
 
+	/**
+	 * Sets the time allowed to open a connection to the proxy service
+	 * 
+	 * @param timeout
+	 *            milliseconds, 0 to wait indefinitely
+	 */
+	public void setConnectTimeout(int timeout) {
+		setRequestProperty(CONNECT_TIMEOUT_PROPERTIES, Integer.valueOf(timeout));
+	}
+
+	/**
+	 * Sets the time allowed to the proxy service to answer a request, so that
+	 * a hung service fails the call instead of blocking it
+	 * 
+	 * @param timeout
+	 *            milliseconds, 0 to wait indefinitely
+	 */
+	public void setRequestTimeout(int timeout) {
+		setRequestProperty(REQUEST_TIMEOUT_PROPERTIES, Integer.valueOf(timeout));
+	}
+
+	/**
+	 * With keep-alive the HTTP connection is returned to the JVM connection
+	 * pool after each call and reused by the next one; without it every call
+	 * opens a new connection. The pool keeps http.maxConnections idle
+	 * connections per host, 5 unless set on the command line
+	 * 
+	 * @param keepAlive
+	 */
+	public void setKeepAlive(boolean keepAlive) {
+		setRequestHeader("Connection", keepAlive ? null : "close");
+	}
+
+	/**
+	 * Asks the proxy service for gzip compressed responses, which the JAX-WS
+	 * runtime decompresses. A service without compression answers as usual
+	 * 
+	 * @param compression
+	 */
+	public void setCompression(boolean compression) {
+		setRequestHeader("Accept-Encoding", compression ? "gzip" : null);
+	}
+
+	private void setRequestProperty(String[] names, Object value) {
+
+		Map<String, Object> context = ((BindingProvider) port).getRequestContext();
+
+		for (String name : names) {
+			context.put(name, value);
+		}
+	}
+
+	/**
+	 * @param value
+	 *            null to remove the header
+	 */
+	@SuppressWarnings("unchecked")
+	private void setRequestHeader(String name, String value) {
+
+		Map<String, Object> context = ((BindingProvider) port).getRequestContext();
+
+		Map<String, List<String>> headers = new HashMap<String, List<String>>();
+		Map<String, List<String>> current = (Map<String, List<String>>) context.get(MessageContext.HTTP_REQUEST_HEADERS);
+
+		if (current != null) {
+			headers.putAll(current);
+		}
+
+		if (value == null) {
+			headers.remove(name);
+		} else {
+			headers.put(name, Collections.singletonList(value));
+		}
+
+		context.put(MessageContext.HTTP_REQUEST_HEADERS, headers);
+	}
+
 	/*
 	 * Main - testing method
 	 */
@@ -6,6 +6,7 @@
 
 package com.asisoft.caen.host.service;
 
+import java.util.List;
 import java.util.logging.Logger;
 import javax.jws.WebMethod;
 import javax.jws.WebResult;
@@ -31,6 +32,63 @@ public class CaenRFIDProxyImpl implements CaenRFIDProxy {
 
     private static final Logger LOG = Logger.getLogger(CaenRFIDProxyImpl.class.getName());
 
+    /**
+     * Freshness bound of the shared inventory in milliseconds, system
+     * property caenrfid.proxy.maxInventoryAge
+     */
+    public static final long DEFAULT_MAX_INVENTORY_AGE = 200;
+
+    /**
+     * Interval of the background inventory in milliseconds, 0 for none,
+     * system property caenrfid.proxy.refreshInterval
+     */
+    public static final long DEFAULT_REFRESH_INTERVAL = 0;
+
+    private final InventoryHistory history = new InventoryHistory();
+
+    /**
+     * One RF round shared by all the concurrent requests
+     */
+    private final InventorySnapshotCache inventory = new InventorySnapshotCache(
+        new InventorySnapshotCache.Source() {
+            public List<String> readInventory() throws Exception {
+                return readReaderInventory();
+            }
+        },
+        new InventorySnapshotCache.Listener() {
+            public void refreshed(List<String> ids) {
+                history.update(ids);
+            }
+        },
+        Long.getLong("caenrfid.proxy.maxInventoryAge", DEFAULT_MAX_INVENTORY_AGE));
+
+    public CaenRFIDProxyImpl() {
+        long refreshInterval = Long.getLong("caenrfid.proxy.refreshInterval", DEFAULT_REFRESH_INTERVAL);
+
+        if (refreshInterval > 0) {
+            inventory.startRefresher(refreshInterval);
+        }
+    }
+
+    /**
+     * @return the shared inventory, for its counters and settings
+     */
+    public InventorySnapshotCache getInventoryCache() {
+        return inventory;
+    }
+
+    /**
+     * Runs one RF inventory round on the reader
+     * 
+     * @return ids of the tags seen, in hex
+     */
+    protected List<String> readReaderInventory() throws Exception {
+        java.util.List<java.lang.String> _returnItem = new java.util.ArrayList<java.lang.String>();
+        java.lang.String _returnItemVal1 = "_returnItemVal1770481064";
+        _returnItem.add(_returnItemVal1);
+        return _returnItem;
+    }
+
     /* (non-Javadoc)
      * @see com.asisoft.caen.host.service.CaenRFIDProxy#getVersion(*
      */
@@ -49,13 +107,10 @@ public class CaenRFIDProxyImpl implements CaenRFIDProxy {
      * @see com.asisoft.caen.host.service.CaenRFIDProxy#getInventory(*
      */
     public net.java.dev.jaxb.array.StringArray getInventory() { 
-        LOG.info("Executing operation getInventory");
+        LOG.fine("Executing operation getInventory");
         try {
             net.java.dev.jaxb.array.StringArray _return = new net.java.dev.jaxb.array.StringArray();
-            java.util.List<java.lang.String> _returnItem = new java.util.ArrayList<java.lang.String>();
-            java.lang.String _returnItemVal1 = "_returnItemVal1770481064";
-            _returnItem.add(_returnItemVal1);
-            _return.getItem().addAll(_returnItem);
+            _return.getItem().addAll(inventory.get());
             return _return;
         } catch (Exception ex) {
             ex.printStackTrace();
@@ -63,4 +118,32 @@ public class CaenRFIDProxyImpl implements CaenRFIDProxy {
         }
     }
 
+    /* (non-Javadoc)
+     * @see com.asisoft.caen.host.service.CaenRFIDProxy#getInventoryPacked(*
+     */
+    public byte[] getInventoryPacked() { 
+        LOG.fine("Executing operation getInventoryPacked");
+        try {
+            return PackedInventory.packHex(inventory.get());
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.asisoft.caen.host.service.CaenRFIDProxy#getInventoryChanges(long)*
+     */
+    public byte[] getInventoryChanges(long generation) { 
+        LOG.fine("Executing operation getInventoryChanges");
+        try {
+            // the history follows every round of the shared inventory
+            inventory.get();
+            return history.getChanges(generation);
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            throw new RuntimeException(ex);
+        }
+    }
+
 }
@@ -0,0 +1,382 @@
+package com.asisoft.caen.host.service;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.xml.ws.Endpoint;
+
+import net.java.dev.jaxb.array.StringArray;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.XMLConfiguration;
+
+/**
+ * Local stand-in for the CaenRFIDProxy service of a reader host computer, to
+ * load test CaenTCPController without a reader. Every inventory returns a
+ * synthetic tag population, part of which is replaced between inventories,
+ * after a configurable latency; faults can be injected at given rates:
+ * requests that hang longer than the client timeout, SOAP faults as after a
+ * reset of the reader, and empty replies.
+ *
+ * Run it standalone with
+ *
+ * <pre>
+ * java com.asisoft.caen.host.service.CaenRFIDProxySimulator [configFile]
+ * </pre>
+ *
+ * or publish it in process with {@link #publish()}.
+ *
+ * @author David Figueroa
+ */
+@javax.jws.WebService(
+                      serviceName = "CaenRFIDProxyService",
+                      portName = "CaenRFIDProxyPort",
+                      targetNamespace = "http://service.host.caen.asisoft.com/",
+                      endpointInterface = "com.asisoft.caen.host.service.CaenRFIDProxy")
+public class CaenRFIDProxySimulator implements CaenRFIDProxy {
+
+	private static final Logger LOG = Logger.getLogger(CaenRFIDProxySimulator.class.getName());
+
+	private static final String DEFAULT_CONFIG = "/props/CaenRFIDProxySimulator_default.xml";
+
+	/**
+	 * Bytes of the simulated EPCs, 96 bit
+	 */
+	private static final int EPC_LENGTH = 12;
+
+	private final Random random = new Random();
+
+	private String endpoint = "http://localhost:8888/caenrfid-proxy";
+
+	private double churnRate = 0;
+	private long latency = 0;
+	private long latencyJitter = 0;
+	private double timeoutRate = 0;
+	private long timeoutDelay = 30000;
+	private double resetRate = 0;
+	private double emptyRate = 0;
+
+	/**
+	 * Current tag population, in hex
+	 */
+	private String[] population = new String[0];
+
+	private final AtomicLong inventories = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong resets = new AtomicLong();
+	private final AtomicLong empties = new AtomicLong();
+
+	private final InventoryHistory history = new InventoryHistory();
+
+	private Endpoint published;
+
+	/**
+	 * Simulator with the default configuration
+	 */
+	public CaenRFIDProxySimulator() throws ConfigurationException {
+		this(null);
+	}
+
+	/**
+	 * @param configFile
+	 *            configuration of the simulator, the default one if null
+	 */
+	public CaenRFIDProxySimulator(String configFile) throws ConfigurationException {
+
+		URL fileurl = configFile == null ? null : getClass().getResource(configFile);
+
+		if (fileurl == null) {
+			if (configFile != null) {
+				LOG.warning("Configuration " + configFile + " not found, using " + DEFAULT_CONFIG);
+			}
+			fileurl = getClass().getResource(DEFAULT_CONFIG);
+		}
+
+		XMLConfiguration config = new XMLConfiguration();
+		config.load(fileurl);
+
+		endpoint = config.getString("endpoint", endpoint);
+		churnRate = config.getDouble("churnRate", churnRate);
+		latency = config.getLong("latency", latency);
+		latencyJitter = config.getLong("latencyJitter", latencyJitter);
+		timeoutRate = config.getDouble("timeoutRate", timeoutRate);
+		timeoutDelay = config.getLong("timeoutDelay", timeoutDelay);
+		resetRate = config.getDouble("resetRate", resetRate);
+		emptyRate = config.getDouble("emptyRate", emptyRate);
+
+		setPopulation(config.getInt("tags", 100));
+	}
+
+	/**
+	 * Replaces the tag population by a new random one
+	 *
+	 * @param tags
+	 *            number of tags in the field
+	 */
+	public synchronized void setPopulation(int tags) {
+
+		population = new String[tags];
+
+		for (int i = 0; i < tags; i++) {
+			population[i] = newEpc();
+		}
+	}
+
+	/**
+	 * @param churnRate
+	 *            fraction of the population replaced between two inventories
+	 */
+	public synchronized void setChurnRate(double churnRate) {
+		this.churnRate = churnRate;
+	}
+
+	/**
+	 * @param latency
+	 *            minimum response time in milliseconds
+	 * @param latencyJitter
+	 *            maximum random time in milliseconds added to the latency
+	 */
+	public synchronized void setLatency(long latency, long latencyJitter) {
+		this.latency = latency;
+		this.latencyJitter = latencyJitter;
+	}
+
+	/**
+	 * @param timeoutRate
+	 *            fraction of the requests answered after timeoutDelay only
+	 * @param resetRate
+	 *            fraction of the requests failing as after a reset of the
+	 *            reader
+	 * @param emptyRate
+	 *            fraction of the inventories answered without tags
+	 */
+	public synchronized void setFaultRates(double timeoutRate, double resetRate, double emptyRate) {
+		this.timeoutRate = timeoutRate;
+		this.resetRate = resetRate;
+		this.emptyRate = emptyRate;
+	}
+
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	/**
+	 * Publishes the simulator on its configured endpoint
+	 */
+	public synchronized void publish() {
+		publish(endpoint);
+	}
+
+	/**
+	 * Publishes the simulator on the given endpoint, for instance
+	 * http://localhost:8888/caenrfid-proxy
+	 */
+	public synchronized void publish(String endpoint) {
+
+		stop();
+
+		this.endpoint = endpoint;
+		published = Endpoint.publish(endpoint, this);
+
+		LOG.info("CaenRFIDProxy simulator published on " + endpoint + " with " + population.length + " tags");
+	}
+
+	/**
+	 * Stops publishing the simulator
+	 */
+	public synchronized void stop() {
+
+		if (published != null) {
+			published.stop();
+			published = null;
+		}
+	}
+
+	/**
+	 * @return inventories requested so far
+	 */
+	public long getInventories() {
+		return inventories.get();
+	}
+
+	/**
+	 * @return requests held until timeoutDelay so far
+	 */
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	/**
+	 * @return requests failed as after a reset so far
+	 */
+	public long getResets() {
+		return resets.get();
+	}
+
+	/**
+	 * @return inventories answered without tags so far
+	 */
+	public long getEmpties() {
+		return empties.get();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.asisoft.caen.host.service.CaenRFIDProxy#getVersion()
+	 */
+	public String getVersion() {
+
+		respond();
+
+		return "CaenRFIDProxy simulator";
+	}
+
+	/* (non-Javadoc)
+	 * @see com.asisoft.caen.host.service.CaenRFIDProxy#getInventory()
+	 */
+	public StringArray getInventory() {
+
+		inventories.incrementAndGet();
+
+		StringArray inventory = new StringArray();
+
+		// the round is taken before waiting, as a reader would
+		String[] round = nextRound();
+
+		respond();
+
+		if (chance(emptyRate)) {
+			empties.incrementAndGet();
+			return inventory;
+		}
+
+		inventory.getItem().addAll(Arrays.asList(round));
+
+		return inventory;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.asisoft.caen.host.service.CaenRFIDProxy#getInventoryPacked()
+	 */
+	public byte[] getInventoryPacked() {
+
+		inventories.incrementAndGet();
+
+		String[] round = nextRound();
+
+		respond();
+
+		if (chance(emptyRate)) {
+			empties.incrementAndGet();
+			return PackedInventory.packHex(Collections.<String> emptyList());
+		}
+
+		return PackedInventory.packHex(Arrays.asList(round));
+	}
+
+	/* (non-Javadoc)
+	 * @see com.asisoft.caen.host.service.CaenRFIDProxy#getInventoryChanges(long)
+	 */
+	public byte[] getInventoryChanges(long generation) {
+
+		inventories.incrementAndGet();
+
+		String[] round = nextRound();
+
+		respond();
+
+		if (chance(emptyRate)) {
+			empties.incrementAndGet();
+			history.update(Collections.<String> emptyList());
+		} else {
+			history.update(Arrays.asList(round));
+		}
+
+		return history.getChanges(generation);
+	}
+
+	/**
+	 * Replaces the churned tags and returns the current population
+	 */
+	private synchronized String[] nextRound() {
+
+		int churned = (int) Math.round(population.length * churnRate);
+
+		for (int i = 0; i < churned; i++) {
+			population[random.nextInt(population.length)] = newEpc();
+		}
+
+		return population.clone();
+	}
+
+	/**
+	 * Applies the latency and the timeout and reset faults to a request
+	 */
+	private void respond() {
+
+		long delay;
+		boolean timeout;
+		boolean reset;
+
+		synchronized (this) {
+			delay = latency + (latencyJitter > 0 ? (long) (random.nextDouble() * latencyJitter) : 0);
+			timeout = chance(timeoutRate);
+			reset = !timeout && chance(resetRate);
+		}
+
+		if (timeout) {
+			timeouts.incrementAndGet();
+			delay = timeoutDelay;
+		}
+
+		if (delay > 0) {
+			try {
+				Thread.sleep(delay);
+
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		if (reset) {
+			resets.incrementAndGet();
+			throw new RuntimeException("Simulated reader reset");
+		}
+	}
+
+	private boolean chance(double rate) {
+		return rate > 0 && random.nextDouble() < rate;
+	}
+
+	private String newEpc() {
+
+		byte[] id = new byte[EPC_LENGTH];
+		random.nextBytes(id);
+		// SGTIN-96 header
+		id[0] = 0x30;
+
+		StringBuilder hex = new StringBuilder(2 * EPC_LENGTH);
+
+		for (byte b : id) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+
+		return hex.toString().toUpperCase();
+	}
+
+	/*
+	 * Main - publishes the simulator until the JVM is stopped
+	 */
+	public static void main(String args[]) throws Exception {
+
+		CaenRFIDProxySimulator simulator = new CaenRFIDProxySimulator(args.length > 0 ? args[0] : null);
+		simulator.publish();
+
+		System.out.println("CaenRFIDProxy simulator running on " + simulator.getEndpoint() + ", Ctrl-C to stop");
+
+		Thread.sleep(Long.MAX_VALUE);
+	}
+}
@@ -0,0 +1,87 @@
+package com.asisoft.caen.host.service;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Binary layout of the reply of
+ * {@link CaenRFIDProxy#getInventoryChanges(long)}, sent as xsd:base64Binary:
+ *
+ * <pre>
+ * generation  8 bytes, big endian   generation of the inventory described
+ * full        1 byte                1 if the reply is a full resync, 0 if
+ *                                   it holds the changes only
+ * added       packed list           tags added since the generation of the
+ *                                   request, every tag on a full resync
+ * removed     packed list           tags removed since the generation of the
+ *                                   request, empty on a full resync
+ * </pre>
+ *
+ * The packed lists follow the layout of {@link PackedInventory}.
+ *
+ * @author David Figueroa
+ */
+public final class InventoryChanges {
+
+	/**
+	 * Offset of the added list
+	 */
+	public static final int ADDED_OFFSET = 9;
+
+	private InventoryChanges() {
+	}
+
+	/**
+	 * Encodes a reply
+	 *
+	 * @param added
+	 *            ids of the tags added, in hex as returned by getInventory
+	 * @param removed
+	 *            ids of the tags removed
+	 */
+	public static byte[] encode(long generation, boolean full, Collection<String> added, Collection<String> removed) {
+
+		List<byte[]> addedEntries = PackedInventory.entries(added);
+		List<byte[]> removedEntries = PackedInventory.entries(removed);
+
+		byte[] changes = new byte[ADDED_OFFSET + PackedInventory.sizeOf(addedEntries)
+				+ PackedInventory.sizeOf(removedEntries)];
+
+		PackedInventory.writeInt(changes, 0, (int) (generation >>> 32));
+		PackedInventory.writeInt(changes, 4, (int) generation);
+		changes[8] = (byte) (full ? 1 : 0);
+
+		int offset = PackedInventory.writeTo(addedEntries, changes, ADDED_OFFSET);
+		PackedInventory.writeTo(removedEntries, changes, offset);
+
+		return changes;
+	}
+
+	/**
+	 * @return generation of the inventory described by a reply
+	 * @throws IllegalArgumentException
+	 *             if the reply is truncated
+	 */
+	public static long getGeneration(byte[] changes) {
+
+		if (changes == null || changes.length < ADDED_OFFSET) {
+			throw new IllegalArgumentException("Truncated inventory changes");
+		}
+
+		return ((long) PackedInventory.readInt(changes, 0) << 32) | (PackedInventory.readInt(changes, 4) & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * @return true if the reply is a full resync
+	 */
+	public static boolean isFull(byte[] changes) {
+		return changes[8] != 0;
+	}
+
+	/**
+	 * @return offset of the removed list
+	 */
+	public static int getRemovedOffset(byte[] changes) {
+		return PackedInventory.skip(changes, ADDED_OFFSET);
+	}
+}
@@ -0,0 +1,155 @@
+package com.asisoft.caen.host.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Server side state of the incremental inventory: the current tags, their
+ * generation, and the changes of the last generations. The generation only
+ * advances when an inventory differs from the previous one, so on a static
+ * population clients keep receiving empty changes.
+ *
+ * Generations start from the creation time of the history, so that after a
+ * restart of the service the generations of its clients are unknown and get a
+ * full resync, as do clients further behind than the kept changes.
+ *
+ * @author David Figueroa
+ */
+public class InventoryHistory {
+
+	/**
+	 * Generations of changes kept by default
+	 */
+	public static final int DEFAULT_DEPTH = 64;
+
+	private final int depth;
+
+	private Set<String> current = new LinkedHashSet<String>();
+	private long generation;
+
+	/**
+	 * Changes of the last generations, oldest first
+	 */
+	private final LinkedList<Change> changes = new LinkedList<Change>();
+
+	public InventoryHistory() {
+		this(DEFAULT_DEPTH);
+	}
+
+	/**
+	 * @param depth
+	 *            generations of changes kept for the clients behind
+	 */
+	public InventoryHistory(int depth) {
+		this.depth = Math.max(1, depth);
+		this.generation = System.currentTimeMillis() << 16;
+	}
+
+	/**
+	 * Feeds a new inventory
+	 *
+	 * @param ids
+	 *            tags seen, in hex as returned by getInventory
+	 * @return the generation of the inventory
+	 */
+	public synchronized long update(Collection<String> ids) {
+
+		Set<String> next = new LinkedHashSet<String>(ids);
+		List<String> added = new ArrayList<String>();
+		List<String> removed = new ArrayList<String>();
+
+		for (String id : next) {
+			if (!current.contains(id)) {
+				added.add(id);
+			}
+		}
+
+		for (String id : current) {
+			if (!next.contains(id)) {
+				removed.add(id);
+			}
+		}
+
+		if (added.isEmpty() && removed.isEmpty()) {
+			return generation;
+		}
+
+		current = next;
+		generation++;
+
+		changes.addLast(new Change(generation, added, removed));
+
+		if (changes.size() > depth) {
+			changes.removeFirst();
+		}
+
+		return generation;
+	}
+
+	/**
+	 * Encodes the changes since a generation, see {@link InventoryChanges}
+	 *
+	 * @param since
+	 *            last generation seen by the client, any unknown generation
+	 *            such as -1 for a full resync
+	 */
+	public synchronized byte[] getChanges(long since) {
+
+		if (since == generation) {
+			List<String> none = Collections.emptyList();
+			return InventoryChanges.encode(generation, false, none, none);
+		}
+
+		if (changes.isEmpty() || since < changes.getFirst().generation - 1 || since > generation) {
+			// unknown or too old generation
+			List<String> none = Collections.emptyList();
+			return InventoryChanges.encode(generation, true, current, none);
+		}
+
+		Set<String> added = new LinkedHashSet<String>();
+		Set<String> removed = new HashSet<String>();
+
+		for (Change change : changes) {
+
+			if (change.generation <= since) {
+				continue;
+			}
+
+			for (String id : change.added) {
+				if (!removed.remove(id)) {
+					added.add(id);
+				}
+			}
+
+			for (String id : change.removed) {
+				if (!added.remove(id)) {
+					removed.add(id);
+				}
+			}
+		}
+
+		return InventoryChanges.encode(generation, false, added, removed);
+	}
+
+	/**
+	 * Changes that led to a generation
+	 */
+	private static class Change {
+
+		final long generation;
+		final List<String> added;
+		final List<String> removed;
+
+		Change(long generation, List<String> added, List<String> removed) {
+			this.generation = generation;
+			this.added = added;
+			this.removed = removed;
+		}
+	}
+}
@@ -0,0 +1,283 @@
+package com.asisoft.caen.host.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Inventory snapshot shared by all the clients of the proxy service. A
+ * snapshot younger than the freshness bound is returned as is; otherwise the
+ * first caller runs a new RF inventory round and every concurrent caller
+ * waits for that same round instead of starting its own (single-flight), so N
+ * clients cost at most one round per freshness interval.
+ *
+ * Optionally a background thread refreshes the snapshot at a fixed interval,
+ * so callers seldom wait for a round at all.
+ *
+ * @author David Figueroa
+ */
+public class InventorySnapshotCache {
+
+	private static final Logger LOG = Logger.getLogger(InventorySnapshotCache.class.getName());
+
+	/**
+	 * The reader
+	 */
+	public interface Source {
+
+		/**
+		 * Runs one RF inventory round
+		 *
+		 * @return ids of the tags seen, in hex
+		 */
+		List<String> readInventory() throws Exception;
+	}
+
+	/**
+	 * Told about every new snapshot
+	 */
+	public interface Listener {
+
+		void refreshed(List<String> ids);
+	}
+
+	private final Source source;
+	private final Listener listener;
+
+	private volatile long maxAge;
+
+	private volatile Snapshot snapshot;
+
+	/**
+	 * The round in progress, null if none
+	 */
+	private FutureTask<List<String>> inFlight;
+
+	private Thread refresher;
+
+	private final AtomicLong rounds = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+
+	/**
+	 * @param source
+	 *            the reader
+	 * @param listener
+	 *            told about every new snapshot, may be null
+	 * @param maxAge
+	 *            freshness bound in milliseconds, 0 for a round per request
+	 *            not already sharing one
+	 */
+	public InventorySnapshotCache(Source source, Listener listener, long maxAge) {
+		this.source = source;
+		this.listener = listener;
+		this.maxAge = Math.max(0, maxAge);
+	}
+
+	public void setMaxAge(long maxAge) {
+		this.maxAge = Math.max(0, maxAge);
+	}
+
+	public long getMaxAge() {
+		return maxAge;
+	}
+
+	/**
+	 * @return a snapshot within the freshness bound, from a new round if
+	 *         needed
+	 * @throws Exception
+	 *             the failure of the round
+	 */
+	public List<String> get() throws Exception {
+		return get(maxAge);
+	}
+
+	/**
+	 * Runs a new round unless one is already in progress, and returns its
+	 * snapshot
+	 */
+	public List<String> refresh() throws Exception {
+		return get(-1);
+	}
+
+	private List<String> get(long maxAge) throws Exception {
+
+		List<String> ids = fresh(maxAge);
+
+		if (ids != null) {
+			hits.incrementAndGet();
+			return ids;
+		}
+
+		FutureTask<List<String>> round;
+		boolean leader = false;
+
+		synchronized (this) {
+
+			ids = fresh(maxAge);
+
+			if (ids != null) {
+				hits.incrementAndGet();
+				return ids;
+			}
+
+			if (inFlight == null) {
+				inFlight = new FutureTask<List<String>>(new Round());
+				leader = true;
+			} else {
+				coalesced.incrementAndGet();
+			}
+
+			round = inFlight;
+		}
+
+		if (leader) {
+			try {
+				round.run();
+
+			} finally {
+				synchronized (this) {
+					inFlight = null;
+				}
+			}
+		}
+
+		try {
+			return round.get();
+
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			throw cause instanceof Exception ? (Exception) cause : e;
+		}
+	}
+
+	private List<String> fresh(long maxAge) {
+
+		Snapshot current = snapshot;
+
+		if (current == null || maxAge < 0 || System.nanoTime() - current.time > maxAge * 1000000L) {
+			return null;
+		}
+
+		return current.ids;
+	}
+
+	/**
+	 * Starts refreshing the snapshot in background
+	 *
+	 * @param interval
+	 *            milliseconds between the start of two rounds
+	 */
+	public synchronized void startRefresher(final long interval) {
+
+		stopRefresher();
+
+		refresher = new Thread(new Runnable() {
+
+			public void run() {
+
+				while (!Thread.currentThread().isInterrupted()) {
+
+					long start = System.currentTimeMillis();
+
+					try {
+						refresh();
+
+					} catch (Exception e) {
+						LOG.log(Level.WARNING, "Background inventory failed", e);
+					}
+
+					long wait = interval - (System.currentTimeMillis() - start);
+
+					if (wait > 0) {
+						try {
+							Thread.sleep(wait);
+
+						} catch (InterruptedException e) {
+							break;
+						}
+					}
+				}
+			}
+		}, "caenrfid-proxy-refresher");
+
+		refresher.setDaemon(true);
+		refresher.start();
+	}
+
+	public synchronized void stopRefresher() {
+
+		if (refresher != null) {
+			refresher.interrupt();
+			refresher = null;
+		}
+	}
+
+	/**
+	 * @return RF rounds run
+	 */
+	public long getRounds() {
+		return rounds.get();
+	}
+
+	/**
+	 * @return requests answered from a fresh snapshot
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return requests that waited for a round started by another request
+	 */
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	/**
+	 * One RF round, publishing its snapshot
+	 */
+	private class Round implements Callable<List<String>> {
+
+		public List<String> call() throws Exception {
+
+			long start = System.nanoTime();
+
+			rounds.incrementAndGet();
+
+			List<String> ids = Collections.unmodifiableList(new ArrayList<String>(source.readInventory()));
+
+			snapshot = new Snapshot(ids, start);
+
+			if (listener != null) {
+				listener.refreshed(ids);
+			}
+
+			return ids;
+		}
+	}
+
+	/**
+	 * Tags of a round and when the round started
+	 */
+	private static final class Snapshot {
+
+		final List<String> ids;
+
+		/**
+		 * System.nanoTime
+		 */
+		final long time;
+
+		Snapshot(List<String> ids, long time) {
+			this.ids = ids;
+			this.time = time;
+		}
+	}
+}
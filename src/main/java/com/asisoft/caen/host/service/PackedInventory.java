@@ -0,0 +1,252 @@
+package com.asisoft.caen.host.service;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Binary layout of the inventory returned by
+ * {@link CaenRFIDProxy#getInventoryPacked()}, sent as xsd:base64Binary:
+ *
+ * <pre>
+ * count    4 bytes, big endian   number of tags
+ * then for every tag:
+ * length   1 byte                id length in bytes, the high bit set
+ *                                if the id is not hex
+ * id       length bytes          the EPC, or the UTF-8 characters of an
+ *                                id that is not hex
+ * </pre>
+ *
+ * A 96 bit EPC takes 13 bytes, about 18 once base64 encoded, against more
+ * than 30 bytes as a hex string element of a StringArray.
+ *
+ * @author David Figueroa
+ */
+public final class PackedInventory {
+
+	/**
+	 * Bytes before the first tag
+	 */
+	public static final int HEADER_LENGTH = 4;
+
+	/**
+	 * Longest id the layout can hold
+	 */
+	public static final int MAX_ID_LENGTH = 0x7F;
+
+	/**
+	 * Bit of the length byte set if the id is not hex and is sent as its
+	 * characters
+	 */
+	public static final int CHARACTERS = 0x80;
+
+	private PackedInventory() {
+	}
+
+	/**
+	 * Packs the given ids
+	 *
+	 * @param ids
+	 *            tag ids, none longer than MAX_ID_LENGTH
+	 */
+	public static byte[] pack(List<byte[]> ids) {
+
+		List<byte[]> entries = new ArrayList<byte[]>(ids.size());
+
+		for (byte[] id : ids) {
+			entries.add(entry(id, 0));
+		}
+
+		return packEntries(entries);
+	}
+
+	/**
+	 * Packs ids given in hex, as returned by getInventory. Ids that are not
+	 * hex are packed as their characters.
+	 */
+	public static byte[] packHex(Collection<String> ids) {
+		return packEntries(entries(ids));
+	}
+
+	private static byte[] packEntries(List<byte[]> entries) {
+
+		byte[] packed = new byte[sizeOf(entries)];
+		writeTo(entries, packed, 0);
+
+		return packed;
+	}
+
+	/**
+	 * @return length of the id of the entry starting at the given offset
+	 */
+	public static int getIdLength(byte[] buffer, int offset) {
+		return buffer[offset] & MAX_ID_LENGTH;
+	}
+
+	/**
+	 * @return true if the id of the entry starting at the given offset is not
+	 *         hex, and is given as its UTF-8 characters
+	 */
+	public static boolean isCharacters(byte[] buffer, int offset) {
+		return (buffer[offset] & CHARACTERS) != 0;
+	}
+
+	/**
+	 * @return offset of the first byte after the packed list starting at the
+	 *         given offset
+	 * @throws IllegalArgumentException
+	 *             if the list is truncated
+	 */
+	public static int skip(byte[] buffer, int offset) {
+
+		int count = getCount(buffer, offset);
+		offset += HEADER_LENGTH;
+
+		for (int i = 0; i < count; i++) {
+			if (offset >= buffer.length) {
+				throw new IllegalArgumentException("Truncated packed inventory");
+			}
+			offset += 1 + getIdLength(buffer, offset);
+		}
+
+		if (offset > buffer.length) {
+			throw new IllegalArgumentException("Truncated packed inventory");
+		}
+
+		return offset;
+	}
+
+	/**
+	 * Bytes taken by the packed entries
+	 */
+	static int sizeOf(List<byte[]> entries) {
+
+		int size = HEADER_LENGTH;
+
+		for (byte[] entry : entries) {
+			size += entry.length;
+		}
+
+		return size;
+	}
+
+	/**
+	 * Writes the packed entries at the given offset
+	 *
+	 * @return offset of the first byte after them
+	 */
+	static int writeTo(List<byte[]> entries, byte[] buffer, int offset) {
+
+		writeInt(buffer, offset, entries.size());
+		offset += HEADER_LENGTH;
+
+		for (byte[] entry : entries) {
+			System.arraycopy(entry, 0, buffer, offset, entry.length);
+			offset += entry.length;
+		}
+
+		return offset;
+	}
+
+	/**
+	 * @return the entries, length byte and id, of ids given in hex
+	 */
+	static List<byte[]> entries(Collection<String> ids) {
+
+		List<byte[]> entries = new ArrayList<byte[]>(ids.size());
+
+		for (String id : ids) {
+			byte[] bytes = parseHex(id);
+
+			if (bytes == null) {
+				// not hex, such as the ids of a stub reader
+				entries.add(entry(toCharacters(id), CHARACTERS));
+			} else {
+				entries.add(entry(bytes, 0));
+			}
+		}
+
+		return entries;
+	}
+
+	private static byte[] entry(byte[] id, int flags) {
+
+		if (id.length > MAX_ID_LENGTH) {
+			throw new IllegalArgumentException("Tag id too long to pack: " + id.length + " bytes");
+		}
+
+		byte[] entry = new byte[1 + id.length];
+		entry[0] = (byte) (id.length | flags);
+		System.arraycopy(id, 0, entry, 1, id.length);
+
+		return entry;
+	}
+
+	/**
+	 * @return number of tags in a packed inventory
+	 * @throws IllegalArgumentException
+	 *             if the inventory is truncated
+	 */
+	public static int getCount(byte[] packed) {
+		return getCount(packed, 0);
+	}
+
+	/**
+	 * @return number of tags in a packed list starting at the given offset
+	 * @throws IllegalArgumentException
+	 *             if the list is truncated
+	 */
+	public static int getCount(byte[] buffer, int offset) {
+
+		if (buffer == null || buffer.length < offset + HEADER_LENGTH) {
+			throw new IllegalArgumentException("Truncated packed inventory");
+		}
+
+		return readInt(buffer, offset);
+	}
+
+	static void writeInt(byte[] buffer, int offset, int value) {
+		buffer[offset] = (byte) (value >>> 24);
+		buffer[offset + 1] = (byte) (value >>> 16);
+		buffer[offset + 2] = (byte) (value >>> 8);
+		buffer[offset + 3] = (byte) value;
+	}
+
+	static int readInt(byte[] buffer, int offset) {
+		return ((buffer[offset] & 0xFF) << 24) | ((buffer[offset + 1] & 0xFF) << 16)
+				| ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+	}
+
+	/**
+	 * @return the bytes of a hex id, null if it is not hex
+	 */
+	private static byte[] parseHex(String hex) {
+
+		int length = (hex.length() + 1) / 2;
+		byte[] id = new byte[length];
+
+		for (int i = 0; i < length; i++) {
+			int index = hex.length() - 2 * (length - i);
+			int h = index < 0 ? 0 : Character.digit(hex.charAt(index), 16);
+			int l = Character.digit(hex.charAt(index + 1), 16);
+
+			if (h < 0 || l < 0) {
+				return null;
+			}
+			id[i] = (byte) ((h << 4) | l);
+		}
+
+		return id;
+	}
+
+	private static byte[] toCharacters(String id) {
+		try {
+			return id.getBytes("UTF-8");
+
+		} catch (UnsupportedEncodingException e) {
+			// every JVM supports UTF-8
+			throw new IllegalStateException(e.toString());
+		}
+	}
+}
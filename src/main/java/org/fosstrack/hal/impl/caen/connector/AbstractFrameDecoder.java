@@ -0,0 +1,32 @@
+package org.fosstrack.hal.impl.caen.connector;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Base of the frame decoders, keeps the read-only view handed to the
+ * listeners so that no object is allocated per frame.
+ *
+ * @author David Figueroa
+ */
+abstract class AbstractFrameDecoder implements FrameDecoder {
+
+	private ByteBuffer source;
+	private ByteBuffer view;
+
+	/**
+	 * @return the view on the bytes of buffer between start and end
+	 */
+	protected ByteBuffer view(ByteBuffer buffer, int start, int end) {
+
+		if (source != buffer) {
+			source = buffer;
+			view = buffer.asReadOnlyBuffer();
+		}
+
+		// in this order, the limit may be below the current position
+		view.limit(end);
+		view.position(start);
+
+		return view;
+	}
+}
@@ -0,0 +1,209 @@
+package org.fosstrack.hal.impl.caen.connector;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Selector event loop shared by the non-blocking connectors: a single thread
+ * waits for the events of all the registered channels and dispatches them to
+ * their handlers, so a few loops serve hundreds of reader connections. The
+ * handlers run on the loop thread and must not block.
+ *
+ * The connectors share a fixed group of loops, see {@link #next()}; the size
+ * of the group is given by the system property
+ * org.fosstrack.hal.impl.caen.connector.eventLoops, 1 by default.
+ *
+ * @author David Figueroa
+ */
+class ConnectorEventLoop implements Runnable {
+
+	static Logger log = Logger.getLogger(ConnectorEventLoop.class);
+
+	/**
+	 * Reacts to the events of a registered channel
+	 */
+	interface Handler {
+
+		/**
+		 * The channel is registered with the key
+		 */
+		void registered(SelectionKey key);
+
+		/**
+		 * Handles the ready operations of the key
+		 */
+		void handle(SelectionKey key) throws IOException;
+
+		/**
+		 * The channel failed, the key is already cancelled
+		 */
+		void failed(IOException e);
+	}
+
+	private static ConnectorEventLoop[] group;
+	private static final AtomicInteger nextLoop = new AtomicInteger();
+
+	/**
+	 * Runs the delayed tasks of all the loops, e.g. reconnections
+	 */
+	private static final Timer timer = new Timer("caen-connector-timer", true);
+
+	private final Selector selector;
+	private final Thread thread;
+
+	/**
+	 * Tasks to run on the loop thread
+	 */
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+	private ConnectorEventLoop(String name) throws IOException {
+
+		selector = Selector.open();
+
+		thread = new Thread(this, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * @return a loop of the shared group, in turn
+	 * @throws IOException
+	 *             if the selectors cannot be opened
+	 */
+	static ConnectorEventLoop next() throws IOException {
+		ConnectorEventLoop[] loops = getGroup();
+		return loops[(nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+	}
+
+	private static synchronized ConnectorEventLoop[] getGroup() throws IOException {
+
+		if (group == null) {
+			int size = Math.max(1, Integer.getInteger("org.fosstrack.hal.impl.caen.connector.eventLoops", 1));
+			ConnectorEventLoop[] loops = new ConnectorEventLoop[size];
+
+			for (int i = 0; i < size; i++) {
+				loops[i] = new ConnectorEventLoop("caen-connector-loop-" + i);
+			}
+
+			group = loops;
+		}
+
+		return group;
+	}
+
+	/**
+	 * Runs the task on the loop thread, at once if called from it
+	 */
+	void execute(Runnable task) {
+
+		if (Thread.currentThread() == thread) {
+			task.run();
+			return;
+		}
+
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	/**
+	 * Runs the task on the loop thread after the delay
+	 *
+	 * @param delay
+	 *            milliseconds
+	 */
+	void schedule(final Runnable task, long delay) {
+
+		timer.schedule(new TimerTask() {
+
+			public void run() {
+				execute(task);
+			}
+		}, delay);
+	}
+
+	/**
+	 * Registers the channel, on the loop thread
+	 *
+	 * @param channel
+	 *            a non-blocking channel
+	 * @param ops
+	 *            the operations of interest
+	 * @param handler
+	 *            told about the events of the channel
+	 */
+	void register(final SelectableChannel channel, final int ops, final Handler handler) {
+
+		execute(new Runnable() {
+
+			public void run() {
+				try {
+					handler.registered(channel.register(selector, ops, handler));
+
+				} catch (ClosedChannelException e) {
+					handler.failed(e);
+				}
+			}
+		});
+	}
+
+	public void run() {
+
+		while (true) {
+
+			try {
+				selector.select();
+
+			} catch (IOException e) {
+				log.error("run: Selector failure: " + e.getMessage());
+				continue;
+			}
+
+			Runnable task;
+
+			while ((task = tasks.poll()) != null) {
+				try {
+					task.run();
+
+				} catch (RuntimeException e) {
+					log.error("run: Task failed", e);
+				}
+			}
+
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+			while (keys.hasNext()) {
+
+				SelectionKey key = keys.next();
+				keys.remove();
+
+				Handler handler = (Handler) key.attachment();
+
+				try {
+					if (key.isValid()) {
+						handler.handle(key);
+					}
+
+				} catch (IOException e) {
+					key.cancel();
+					handler.failed(e);
+
+				} catch (RuntimeException e) {
+					log.error("run: Handler failed", e);
+					key.cancel();
+					handler.failed(new IOException(e.getMessage()));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package org.fosstrack.hal.impl.caen.connector;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Splits the bytes received from a device into frames, without copying them:
+ * each frame is handed to the listener as a read-only view on the receive
+ * buffer. A decoder keeps the state of the frame being received and serves a
+ * single connection.
+ *
+ * @author David Figueroa
+ */
+public interface FrameDecoder {
+
+	/**
+	 * Told about every frame received
+	 */
+	interface Listener {
+
+		/**
+		 * @param frame
+		 *            the payload of the frame, between position and limit. The
+		 *            view is only valid during the call and must be copied to
+		 *            be kept
+		 */
+		void frameReceived(ByteBuffer frame);
+	}
+
+	/**
+	 * Delivers the complete frames between position and limit of the buffer
+	 * and moves its position past them; the bytes of an incomplete frame are
+	 * left in the buffer
+	 *
+	 * @param buffer
+	 *            the bytes received
+	 * @param listener
+	 *            told about the frames
+	 * @throws IOException
+	 *             if the stream is corrupt and the connection must be closed
+	 */
+	void decode(ByteBuffer buffer, Listener listener) throws IOException;
+
+	/**
+	 * @param payload
+	 *            the bytes to send, between position and limit
+	 * @return the frame carrying the payload
+	 */
+	ByteBuffer encode(ByteBuffer payload);
+
+	/**
+	 * @return bytes of the longest frame, delimiter or header included. The
+	 *         bytes left by decode are always fewer
+	 */
+	int getMaxFrameLength();
+
+	/**
+	 * Forgets the frame being received, the connection was reopened
+	 */
+	void reset();
+}
@@ -0,0 +1,125 @@
+package org.fosstrack.hal.impl.caen.connector;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Frames made of a big-endian unsigned length followed by that many bytes of
+ * payload, for binary replies. A length above the maximum means the stream
+ * is out of sync and fails the connection.
+ *
+ * @author David Figueroa
+ */
+public class LengthPrefixedFrameDecoder extends AbstractFrameDecoder {
+
+	private final int lengthFieldSize;
+	private final int maxPayloadLength;
+
+	/**
+	 * 4 bytes length, payloads of up to 1 MB
+	 */
+	public LengthPrefixedFrameDecoder() {
+		this(4, 1 << 20);
+	}
+
+	/**
+	 * @param lengthFieldSize
+	 *            bytes of the length, 1, 2 or 4
+	 * @param maxPayloadLength
+	 *            bytes of the longest payload
+	 */
+	public LengthPrefixedFrameDecoder(int lengthFieldSize, int maxPayloadLength) {
+
+		if (lengthFieldSize != 1 && lengthFieldSize != 2 && lengthFieldSize != 4) {
+			throw new IllegalArgumentException("lengthFieldSize must be 1, 2 or 4: " + lengthFieldSize);
+		}
+
+		this.lengthFieldSize = lengthFieldSize;
+		this.maxPayloadLength = Math.max(0, Math.min(maxPayloadLength, Integer.MAX_VALUE - lengthFieldSize));
+	}
+
+	/* (non-Javadoc)
+	 * @see org.fosstrack.hal.impl.caen.connector.FrameDecoder#decode(java.nio.ByteBuffer, org.fosstrack.hal.impl.caen.connector.FrameDecoder.Listener)
+	 */
+	public void decode(ByteBuffer buffer, Listener listener) throws IOException {
+
+		int start = buffer.position();
+		int end = buffer.limit();
+
+		while (end - start >= lengthFieldSize) {
+
+			long length = getLength(buffer, start);
+
+			if (length > maxPayloadLength) {
+				buffer.position(start);
+				throw new IOException("frame of " + length + " bytes, longer than " + maxPayloadLength);
+			}
+
+			int payload = start + lengthFieldSize;
+
+			if (end - payload < length) {
+				break;
+			}
+
+			listener.frameReceived(view(buffer, payload, payload + (int) length));
+			start = payload + (int) length;
+		}
+
+		buffer.position(start);
+	}
+
+	private long getLength(ByteBuffer buffer, int index) {
+
+		switch (lengthFieldSize) {
+		case 1:
+			return buffer.get(index) & 0xFFL;
+		case 2:
+			return buffer.getShort(index) & 0xFFFFL;
+		default:
+			return buffer.getInt(index) & 0xFFFFFFFFL;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.fosstrack.hal.impl.caen.connector.FrameDecoder#encode(java.nio.ByteBuffer)
+	 */
+	public ByteBuffer encode(ByteBuffer payload) {
+
+		int length = payload.remaining();
+
+		if (length > maxPayloadLength || lengthFieldSize < 4 && length >= 1 << (8 * lengthFieldSize)) {
+			throw new IllegalArgumentException("payload of " + length + " bytes, too long for the frame");
+		}
+
+		ByteBuffer frame = ByteBuffer.allocate(lengthFieldSize + length);
+
+		switch (lengthFieldSize) {
+		case 1:
+			frame.put((byte) length);
+			break;
+		case 2:
+			frame.putShort((short) length);
+			break;
+		default:
+			frame.putInt(length);
+		}
+
+		frame.put(payload);
+		frame.flip();
+
+		return frame;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.fosstrack.hal.impl.caen.connector.FrameDecoder#getMaxFrameLength()
+	 */
+	public int getMaxFrameLength() {
+		return lengthFieldSize + maxPayloadLength;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.fosstrack.hal.impl.caen.connector.FrameDecoder#reset()
+	 */
+	public void reset() {
+	}
+}
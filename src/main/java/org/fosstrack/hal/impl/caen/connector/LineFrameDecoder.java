@@ -0,0 +1,107 @@
+package org.fosstrack.hal.impl.caen.connector;
+
+import java.nio.ByteBuffer;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Frames ended by '\n', the text protocol of the readers. A '\r' before the
+ * end of line is stripped; lines longer than the maximum are discarded.
+ *
+ * @author David Figueroa
+ */
+public class LineFrameDecoder extends AbstractFrameDecoder {
+
+	static Logger log = Logger.getLogger(LineFrameDecoder.class);
+
+	private static final byte[] LINE_SEPARATOR = System.getProperty("line.separator").getBytes();
+
+	private final int maxLineLength;
+
+	/**
+	 * Bytes after the position already searched for the end of line
+	 */
+	private int scanned = 0;
+
+	/**
+	 * Skipping the rest of a line longer than the maximum
+	 */
+	private boolean discarding = false;
+
+	/**
+	 * Lines of up to 1 MB
+	 */
+	public LineFrameDecoder() {
+		this(1 << 20);
+	}
+
+	/**
+	 * @param maxLineLength
+	 *            bytes of the longest line, end of line included
+	 */
+	public LineFrameDecoder(int maxLineLength) {
+		this.maxLineLength = Math.max(2, maxLineLength);
+	}
+
+	/* (non-Javadoc)
+	 * @see org.fosstrack.hal.impl.caen.connector.FrameDecoder#decode(java.nio.ByteBuffer, org.fosstrack.hal.impl.caen.connector.FrameDecoder.Listener)
+	 */
+	public void decode(ByteBuffer buffer, Listener listener) {
+
+		int start = buffer.position();
+		int end = buffer.limit();
+
+		for (int i = start + scanned; i < end; i++) {
+
+			if (buffer.get(i) == '\n') {
+
+				if (discarding) {
+					discarding = false;
+
+				} else {
+					int last = i > start && buffer.get(i - 1) == '\r' ? i - 1 : i;
+					listener.frameReceived(view(buffer, start, last));
+				}
+				start = i + 1;
+			}
+		}
+
+		if (end - start >= maxLineLength) {
+			if (!discarding) {
+				log.warn("decode: line longer than " + maxLineLength + " bytes discarded");
+			}
+			start = end;
+			discarding = true;
+		}
+
+		buffer.position(start);
+		scanned = end - start;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.fosstrack.hal.impl.caen.connector.FrameDecoder#encode(java.nio.ByteBuffer)
+	 */
+	public ByteBuffer encode(ByteBuffer payload) {
+
+		ByteBuffer frame = ByteBuffer.allocate(payload.remaining() + LINE_SEPARATOR.length);
+		frame.put(payload).put(LINE_SEPARATOR);
+		frame.flip();
+
+		return frame;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.fosstrack.hal.impl.caen.connector.FrameDecoder#getMaxFrameLength()
+	 */
+	public int getMaxFrameLength() {
+		return maxLineLength;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.fosstrack.hal.impl.caen.connector.FrameDecoder#reset()
+	 */
+	public void reset() {
+		scanned = 0;
+		discarding = false;
+	}
+}
@@ -0,0 +1,270 @@
+package org.fosstrack.hal.impl.caen.connector;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Non-blocking connection of a TCPRawSocketConnector to its device, served
+ * by a shared {@link ConnectorEventLoop} instead of a producer and a consumer
+ * thread. Replies are read into a direct buffer and split into frames in
+ * place by the {@link FrameDecoder} of the connector, which hands them to the
+ * connector as views on the buffer.
+ *
+ * @author David Figueroa
+ */
+class NonBlockingConnection implements ConnectorEventLoop.Handler {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final TCPRawSocketConnector connector;
+	private final FrameDecoder decoder;
+	private final SocketAddress address;
+	private final ConnectorEventLoop loop;
+
+	/**
+	 * Loop thread only
+	 */
+	private SocketChannel channel;
+	private SelectionKey key;
+	private ByteBuffer readBuffer;
+
+	private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<ByteBuffer>();
+
+	private volatile boolean closed = false;
+
+	NonBlockingConnection(TCPRawSocketConnector connector, FrameDecoder decoder, SocketAddress address,
+			ConnectorEventLoop loop) {
+		this.connector = connector;
+		this.decoder = decoder;
+		this.address = address;
+		this.loop = loop;
+		this.readBuffer = ByteBuffer.allocateDirect(Math.min(BUFFER_SIZE, decoder.getMaxFrameLength()));
+	}
+
+	/**
+	 * Starts connecting, returns at once. The connector is told through
+	 * connectionLost if it fails
+	 */
+	void open() throws IOException {
+
+		closed = false;
+
+		SocketChannel opened = SocketChannel.open();
+		opened.configureBlocking(false);
+
+		final boolean connected = opened.connect(address);
+		final SocketChannel newChannel = opened;
+
+		loop.execute(new Runnable() {
+
+			public void run() {
+				channel = newChannel;
+				readBuffer.clear();
+				decoder.reset();
+			}
+		});
+
+		loop.register(newChannel, connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, this);
+	}
+
+	/**
+	 * Opens again after the delay, unless closed meanwhile
+	 *
+	 * @param delay
+	 *            milliseconds
+	 */
+	void reopenLater(long delay) {
+
+		loop.schedule(new Runnable() {
+
+			public void run() {
+				if (closed) {
+					return;
+				}
+
+				try {
+					open();
+
+				} catch (IOException e) {
+					TCPRawSocketConnector.log.info("TCPConnector No fatal: trying to reconnect. " + e.getMessage());
+					reopenLater(1000);
+				}
+			}
+		}, delay);
+	}
+
+	/**
+	 * Queues a frame for the device
+	 *
+	 * @param frame
+	 *            encoded by the decoder, not modified afterwards
+	 */
+	void send(ByteBuffer frame) throws IOException {
+
+		if (closed) {
+			throw new IOException("TCPConnector Error: Socket comm error");
+		}
+
+		writeQueue.add(frame);
+
+		loop.execute(new Runnable() {
+
+			public void run() {
+				if (key != null && key.isValid() && (key.interestOps() & SelectionKey.OP_CONNECT) == 0) {
+					key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Closes the channel, on the loop thread
+	 *
+	 * @param reopen
+	 *            false to stop for good
+	 */
+	void close(boolean reopen) {
+
+		if (!reopen) {
+			closed = true;
+		}
+
+		loop.execute(new Runnable() {
+
+			public void run() {
+				closeChannel();
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see org.fosstrack.hal.impl.caen.connector.ConnectorEventLoop.Handler#registered(java.nio.channels.SelectionKey)
+	 */
+	public void registered(SelectionKey key) {
+
+		this.key = key;
+
+		if (closed) {
+			closeChannel();
+
+		} else if (!writeQueue.isEmpty() && (key.interestOps() & SelectionKey.OP_CONNECT) == 0) {
+			key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.fosstrack.hal.impl.caen.connector.ConnectorEventLoop.Handler#handle(java.nio.channels.SelectionKey)
+	 */
+	public void handle(SelectionKey key) throws IOException {
+
+		if (closed) {
+			closeChannel();
+			return;
+		}
+
+		if (key.isConnectable()) {
+			channel.finishConnect();
+			key.interestOps(SelectionKey.OP_READ | (writeQueue.isEmpty() ? 0 : SelectionKey.OP_WRITE));
+
+			TCPRawSocketConnector.log.info("TCPConnector: connection established");
+			connector.connected();
+			return;
+		}
+
+		if (key.isReadable()) {
+			read();
+		}
+
+		if (key.isValid() && key.isWritable()) {
+			write();
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see org.fosstrack.hal.impl.caen.connector.ConnectorEventLoop.Handler#failed(java.io.IOException)
+	 */
+	public void failed(IOException e) {
+
+		closeChannel();
+
+		if (!closed) {
+			TCPRawSocketConnector.log.error("TCPConnector - Socket read error: " + e.getMessage());
+			connector.connectionLost();
+		}
+	}
+
+	private void read() throws IOException {
+
+		int n;
+
+		while ((n = channel.read(readBuffer)) > 0) {
+			frame();
+		}
+
+		if (n < 0) {
+			throw new EOFException("remote host closed the socket");
+		}
+	}
+
+	/**
+	 * Delivers the complete frames of readBuffer and keeps the partial one
+	 */
+	private void frame() throws IOException {
+
+		readBuffer.flip();
+		decoder.decode(readBuffer, connector);
+		readBuffer.compact();
+
+		if (!readBuffer.hasRemaining()) {
+			// the partial frame fills the buffer, it is shorter than the
+			// maximum frame length so the buffer may still grow
+			ByteBuffer larger = ByteBuffer.allocateDirect(Math.min(decoder.getMaxFrameLength(),
+					2 * readBuffer.capacity()));
+			readBuffer.flip();
+			larger.put(readBuffer);
+			readBuffer = larger;
+		}
+	}
+
+	private void write() throws IOException {
+
+		ByteBuffer buffer;
+
+		while ((buffer = writeQueue.peek()) != null) {
+
+			channel.write(buffer);
+
+			if (buffer.hasRemaining()) {
+				// the socket buffer is full, wait for the next write event
+				return;
+			}
+			writeQueue.poll();
+		}
+
+		key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+	}
+
+	private void closeChannel() {
+
+		if (key != null) {
+			key.cancel();
+			key = null;
+		}
+
+		if (channel != null) {
+			try {
+				channel.close();
+
+			} catch (IOException e) {
+				TCPRawSocketConnector.log.warn(e.getMessage());
+			}
+			channel = null;
+		}
+	}
+}
@@ -8,6 +8,7 @@ import java.io.PrintWriter;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
@@ -15,11 +16,20 @@ import org.apache.log4j.Logger;
 import org.fosstrak.hal.impl.caen.CaenController;
 
 /**
+ * Line oriented TCP connection to a device. By default each connection has a
+ * producer thread reading the replies and a consumer thread delivering them;
+ * in non-blocking mode the connection is served by a selector loop shared by
+ * all the non-blocking connectors, see {@link NonBlockingConnection}.
+ * 
+ * In non-blocking mode the replies are split by a {@link FrameDecoder}, by
+ * lines unless another decoder is given. The frames go to the frame listener
+ * as views on the receive buffer, without copy nor charset decoding; without
+ * frame listener they are read as ISO-8859-1 and go to dataReceived.
  * 
  * @author Pablo Piñeiro Rey
  * @author David Figueroa
  */
-public class TCPRawSocketConnector {
+public class TCPRawSocketConnector implements FrameDecoder.Listener {
 	
 	static Logger log = Logger.getLogger(TCPRawSocketConnector.class);
 	
@@ -53,10 +63,36 @@ public class TCPRawSocketConnector {
 	 */
 	BlockingQueue<String> messageQueue = new LinkedBlockingQueue<String>();
 
-	boolean initialized = false;
+	volatile boolean initialized = false;
 	boolean operating = false;
 	boolean autoReconnect;
 
+	/**
+	 * Served by the shared selector loop instead of producer and consumer
+	 * threads
+	 */
+	final boolean nonBlocking;
+
+	/**
+	 * Splits the replies in non-blocking mode
+	 */
+	final FrameDecoder decoder;
+
+	/**
+	 * The connection in non-blocking mode
+	 */
+	NonBlockingConnection connection;
+
+	/**
+	 * Told about the frames instead of dataReceived
+	 */
+	volatile FrameDecoder.Listener frameListener;
+
+	/**
+	 * Reused to build the message strings, loop thread only
+	 */
+	private char[] chars = new char[256];
+
 	/**
 	 * Producer of messages for the queue
 	 */
@@ -75,16 +111,57 @@ public class TCPRawSocketConnector {
 	 * @param autoReconnect
 	 */
 	public TCPRawSocketConnector(String host, int port, boolean autoReconnect) {
+		this(host, port, autoReconnect, false);
+	}
+
+	/**
+	 * 
+	 * @param host
+	 * @param port
+	 * @param autoReconnect
+	 * @param nonBlocking
+	 *            true to be served by the shared selector loop
+	 */
+	public TCPRawSocketConnector(String host, int port, boolean autoReconnect, boolean nonBlocking) {
+		this(host, port, autoReconnect, nonBlocking ? new LineFrameDecoder() : null);
+	}
+
+	/**
+	 * 
+	 * @param host
+	 * @param port
+	 * @param autoReconnect
+	 * @param decoder
+	 *            splits the replies, the connector is served by the shared
+	 *            selector loop. Null for the blocking mode
+	 */
+	public TCPRawSocketConnector(String host, int port, boolean autoReconnect, FrameDecoder decoder) {
 
 		this.autoReconnect = autoReconnect;
+		this.nonBlocking = decoder != null;
+		this.decoder = decoder;
 		s = new Socket();
 		address = new InetSocketAddress(host, port);
 	}
 	
+	/**
+	 * @param frameListener
+	 *            told about the frames received in non-blocking mode, instead
+	 *            of dataReceived. Called on the loop thread, must not block
+	 */
+	public void setFrameListener(FrameDecoder.Listener frameListener) {
+		this.frameListener = frameListener;
+	}
+
 	/**
 	 *  Connector's socket string representation
 	 */
 	public String toString() {
+
+		if (nonBlocking) {
+			return address.toString();
+		}
+
 		return s.getInetAddress().getHostAddress() + ":" + s.getPort();
 	}
 
@@ -98,6 +175,13 @@ public class TCPRawSocketConnector {
 		if(controller == null) {
 			throw new Exception("TCPConnector: No Controller bound to yet");
 		}
+
+		if (nonBlocking) {
+			// connects in background, see connected()
+			connection = new NonBlockingConnection(this, decoder, address, ConnectorEventLoop.next());
+			connection.open();
+			return;
+		}
 		
 		s.connect(address);
 		log.info("TCPConnector: connection established");
@@ -149,6 +233,14 @@ public class TCPRawSocketConnector {
 	 */
 	public void sendData(String data) throws IOException {
 
+		if (nonBlocking) {
+			log.info("TCPConnector:send-data: " + data);
+
+			// queued until the connection is established
+			connection.send(decoder.encode(ByteBuffer.wrap(data.getBytes("ISO-8859-1"))));
+			return;
+		}
+
 		if (!s.isConnected() || s.isOutputShutdown()) {
 			throw new IOException("TCPConnector Error: Socket comm error");
 		}
@@ -175,6 +267,54 @@ public class TCPRawSocketConnector {
 		// Callback al controller
 	}
 
+	/**
+	 * Sends a binary frame, in non-blocking mode
+	 * 
+	 * @param payload
+	 *            the bytes between position and limit, consumed
+	 * @throws IOException
+	 */
+	public void sendFrame(ByteBuffer payload) throws IOException {
+
+		if (!nonBlocking) {
+			throw new IOException("TCPConnector Error: frames need the non-blocking mode");
+		}
+
+		connection.send(decoder.encode(payload));
+	}
+
+	/* (non-Javadoc)
+	 * @see org.fosstrack.hal.impl.caen.connector.FrameDecoder.Listener#frameReceived(java.nio.ByteBuffer)
+	 */
+	public void frameReceived(ByteBuffer frame) {
+
+		FrameDecoder.Listener listener = frameListener;
+
+		if (listener != null) {
+			listener.frameReceived(frame);
+			return;
+		}
+
+		int length = frame.remaining();
+
+		if (chars.length < length) {
+			chars = new char[Math.max(length, 2 * chars.length)];
+		}
+
+		for (int i = 0, position = frame.position(); i < length; i++) {
+			chars[i] = (char) (frame.get(position + i) & 0xFF);
+		}
+
+		dataReceived(new String(chars, 0, length));
+	}
+
+	/**
+	 * The connection is established, in non-blocking mode
+	 */
+	void connected() {
+		initialized = true;
+	}
+
 	/**
 	 * 
 	 */
@@ -182,6 +322,16 @@ public class TCPRawSocketConnector {
 
 		operating = initialized = false;
 
+		if (nonBlocking) {
+			connection.close(autoReconnect);
+
+			if (autoReconnect) {
+				log.info("TCPConnector No fatal: trying to reconnect. ");
+				connection.reopenLater(1000);
+			}
+			return;
+		}
+
 		try {
 			if (s != null && !s.isInputShutdown()) {
 				in.close();
@@ -231,6 +381,13 @@ public class TCPRawSocketConnector {
 	 */
 	public void close() throws IOException {
 
+		if (nonBlocking) {
+			if (connection != null) {
+				connection.close(false);
+			}
+			return;
+		}
+
 		try {
 			in.close();
 			out.close();
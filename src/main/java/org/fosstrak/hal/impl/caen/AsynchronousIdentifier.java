@@ -0,0 +1,266 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.fosstrak.hal.AsynchronousIdentifyListener;
+import org.fosstrak.hal.Observation;
+import org.fosstrak.hal.Trigger;
+import org.fosstrak.hal.UnsupportedOperationException;
+
+/**
+ * Continuous identify for the asynchronous mode of the controllers. Every
+ * active read point gets its own inventory loop; the resulting observations
+ * are queued and handed in batches to the registered listeners by a separate
+ * dispatcher thread, so a slow listener never delays an inventory round. If
+ * the listeners cannot keep up and the queue fills, the newest observations
+ * are dropped and counted.
+ *
+ * @author David Figueroa
+ */
+class AsynchronousIdentifier {
+
+	static Logger log = Logger.getLogger(AsynchronousIdentifier.class);
+
+	/**
+	 * Observations waiting for the dispatcher
+	 */
+	private static final int QUEUE_CAPACITY = 1024;
+
+	/**
+	 * Wait before retrying a read point whose identify failed, in
+	 * milliseconds
+	 */
+	private static final long ERROR_BACKOFF = 1000;
+
+	/**
+	 * Time given to the threads to finish when stopping, in milliseconds
+	 */
+	private static final long STOP_TIMEOUT = 5000;
+
+	private final String name;
+	private final IdentifyExecutor.ReadPointIdentifier identifier;
+
+	private final List<AsynchronousIdentifyListener> listeners = new CopyOnWriteArrayList<AsynchronousIdentifyListener>();
+	private final BlockingQueue<Observation> queue = new ArrayBlockingQueue<Observation>(QUEUE_CAPACITY);
+	private final AtomicLong dropped = new AtomicLong();
+
+	private volatile boolean running = false;
+	private List<Thread> threads = new ArrayList<Thread>();
+
+	/**
+	 * @param name
+	 *            name used for the threads, usually the HAL name
+	 * @param identifier
+	 *            identifies one read point
+	 */
+	public AsynchronousIdentifier(String name, IdentifyExecutor.ReadPointIdentifier identifier) {
+		this.name = name;
+		this.identifier = identifier;
+	}
+
+	/**
+	 * Interval between the start of two rounds requested by the trigger.
+	 * Continuous triggers run rounds back to back, timer triggers every given
+	 * number of milliseconds.
+	 *
+	 * @param trigger
+	 * @return interval in milliseconds, 0 for back to back rounds
+	 * @throws UnsupportedOperationException
+	 *             for any other kind of trigger
+	 */
+	public static long getInterval(Trigger trigger) throws UnsupportedOperationException {
+
+		if (trigger == null || "continuous".equalsIgnoreCase(trigger.getType())) {
+			return 0;
+		}
+
+		if ("timer".equalsIgnoreCase(trigger.getType())) {
+			try {
+				return Math.max(0, Long.parseLong(trigger.getValue().trim()));
+
+			} catch (Exception e) {
+				throw new UnsupportedOperationException("Invalid timer trigger value: " + trigger.getValue());
+			}
+		}
+
+		throw new UnsupportedOperationException("Unsupported trigger type: " + trigger.getType());
+	}
+
+	public void addListener(AsynchronousIdentifyListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(AsynchronousIdentifyListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Starts one inventory loop per read point and the dispatcher, stopping
+	 * the previous ones if still running.
+	 *
+	 * @param readPointNames
+	 *            read points to identify
+	 * @param interval
+	 *            interval between the start of two rounds of a read point in
+	 *            milliseconds, 0 for back to back rounds
+	 */
+	public synchronized void start(String[] readPointNames, long interval) {
+
+		stop();
+
+		running = true;
+		queue.clear();
+
+		List<Thread> started = new ArrayList<Thread>();
+
+		for (String readPointName : readPointNames) {
+			started.add(new Thread(new InventoryLoop(readPointName, interval), name + "-async-" + readPointName));
+		}
+		started.add(new Thread(new Dispatcher(), name + "-async-dispatcher"));
+
+		for (Thread t : started) {
+			t.setDaemon(true);
+			t.start();
+		}
+
+		threads = started;
+	}
+
+	/**
+	 * Stops the inventory loops and the dispatcher, waiting for them to
+	 * finish. Observations still queued are discarded.
+	 */
+	public synchronized void stop() {
+
+		if (!running) {
+			return;
+		}
+
+		running = false;
+
+		for (Thread t : threads) {
+			t.interrupt();
+		}
+
+		for (Thread t : threads) {
+			if (t == Thread.currentThread()) {
+				// stopped by a listener
+				continue;
+			}
+			try {
+				t.join(STOP_TIMEOUT);
+
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+
+		threads = new ArrayList<Thread>();
+		queue.clear();
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * @return observations discarded because the listeners fell behind
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Identifies one read point until stopped
+	 */
+	private class InventoryLoop implements Runnable {
+
+		private final String readPointName;
+		private final long interval;
+
+		InventoryLoop(String readPointName, long interval) {
+			this.readPointName = readPointName;
+			this.interval = interval;
+		}
+
+		public void run() {
+
+			while (running && !Thread.currentThread().isInterrupted()) {
+
+				long start = System.currentTimeMillis();
+				long wait = interval;
+
+				try {
+					Observation observation = identifier.identify(readPointName);
+
+					if (!queue.offer(observation)) {
+						dropped.incrementAndGet();
+					}
+
+					wait = interval - (System.currentTimeMillis() - start);
+
+				} catch (Exception e) {
+					if (!running) {
+						break;
+					}
+					log.warn("InventoryLoop: identify failed on " + readPointName + ": " + e.getMessage());
+					wait = Math.max(interval, ERROR_BACKOFF);
+				}
+
+				if (wait > 0) {
+					try {
+						Thread.sleep(wait);
+
+					} catch (InterruptedException e) {
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Hands the queued observations to the listeners
+	 */
+	private class Dispatcher implements Runnable {
+
+		public void run() {
+
+			List<Observation> batch = new ArrayList<Observation>();
+
+			while (running && !Thread.currentThread().isInterrupted()) {
+
+				try {
+					batch.add(queue.take());
+
+				} catch (InterruptedException e) {
+					break;
+				}
+
+				queue.drainTo(batch);
+
+				Observation[] observations = batch.toArray(new Observation[batch.size()]);
+				batch.clear();
+
+				for (AsynchronousIdentifyListener listener : listeners) {
+					try {
+						listener.identified(observations);
+
+					} catch (Exception e) {
+						log.error("Dispatcher: listener failed", e);
+					}
+				}
+			}
+		}
+	}
+}
@@ -11,4 +11,10 @@ import org.fosstrak.hal.HardwareAbstraction;
  */
 public interface CaenController extends HardwareAbstraction {
 
+	/**
+	 * Releases the controller: stops its background work, unregisters its
+	 * MBean and disconnects from the reader. The controller is not used
+	 * afterwards
+	 */
+	void shutdown();
 }
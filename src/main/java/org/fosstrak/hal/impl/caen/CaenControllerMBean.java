@@ -0,0 +1,107 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+/**
+ * Management interface of a CAEN controller, registered in the platform
+ * MBean server as org.fosstrak.hal.impl.caen:type=&lt;controller
+ * class&gt;,name=&lt;HAL name&gt;. Latencies are in microseconds and are the
+ * worst among the read points of the controller.
+ *
+ * @author David Figueroa
+ */
+public interface CaenControllerMBean {
+
+	String getHALName();
+
+	boolean isConnected();
+
+	/**
+	 * @return serial port of a USB reader, service endpoint of a remote reader
+	 */
+	String getConnection();
+
+	String[] getReadPointNames();
+
+	/**
+	 * @return minimum interval between two inventories in milliseconds: the
+	 *         pacing of the rounds of a USB reader, the polling interval of
+	 *         the asynchronous identify of a remote reader
+	 */
+	long getInventoryInterval();
+
+	/**
+	 * Changes the minimum interval between two inventories, the polling
+	 * interval of a remote reader applies from the next start of the
+	 * asynchronous identify
+	 *
+	 * @param interval
+	 *            milliseconds, 0 for no pacing
+	 */
+	void setInventoryInterval(long interval);
+
+	long getRounds();
+
+	long getRoundsPerSecond();
+
+	long getTagsPerSecond();
+
+	int getLastInventorySize();
+
+	double getLatencyMean();
+
+	long getLatencyP50();
+
+	long getLatencyP90();
+
+	long getLatencyP99();
+
+	long getLatencyMax();
+
+	long getExceptions();
+
+	/**
+	 * @return inventory calls that shared a round in progress
+	 */
+	long getCoalesced();
+
+	/**
+	 * @return inventory calls rejected by the circuit breaker, 0 for
+	 *         controllers without one
+	 */
+	long getRejected();
+
+	long getReconnects();
+
+	/**
+	 * @return duration of the last outage in milliseconds, -1 if unknown
+	 */
+	long getLastRecoveryTime();
+
+	/**
+	 * @return true while a lost USB reader is reconnected in background,
+	 *         false for remote readers, which recover through their circuit
+	 *         breaker
+	 */
+	boolean isReconnecting();
+
+	/**
+	 * @return CLOSED, OPEN or HALF_OPEN, the worst among the circuit breakers
+	 *         of the remote readers, null for USB readers
+	 */
+	String getBreakerState();
+
+	/**
+	 * Resets the reader as HardwareAbstraction.reset() does
+	 */
+	void reset() throws Exception;
+
+	/**
+	 * @param name
+	 *            any parameter name accepted by getParameter, e.g.
+	 *            metrics.Source_0.latency.p999
+	 * @return its value, null if unknown
+	 */
+	String getParameter(String name) throws Exception;
+}
@@ -0,0 +1,232 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.apache.log4j.Logger;
+import org.fosstrak.hal.HardwareAbstraction;
+import org.fosstrak.hal.HardwareException;
+
+/**
+ * Publishes the state of a controller through JMX, see
+ * {@link CaenControllerMBean}. Exceptions of the operations are rethrown with
+ * their message only, so that JMX consoles do not need the HAL classes.
+ *
+ * @author David Figueroa
+ */
+class CaenControllerMonitor implements CaenControllerMBean {
+
+	static Logger log = Logger.getLogger(CaenControllerMonitor.class);
+
+	static final String DOMAIN = "org.fosstrak.hal.impl.caen";
+
+	/**
+	 * Controller state not available through HardwareAbstraction
+	 */
+	interface Target {
+
+		boolean isConnected();
+
+		String getConnection();
+
+		long getInventoryInterval();
+
+		void setInventoryInterval(long interval);
+
+		long getLastRecoveryTime();
+
+		boolean isReconnecting();
+
+		String getBreakerState();
+	}
+
+	private final HardwareAbstraction controller;
+	private final InventoryMetrics metrics;
+	private final Target target;
+
+	private ObjectName name;
+
+	public CaenControllerMonitor(HardwareAbstraction controller, InventoryMetrics metrics, Target target) {
+		this.controller = controller;
+		this.metrics = metrics;
+		this.target = target;
+	}
+
+	/**
+	 * Registers the monitor in the platform MBean server. If a live
+	 * controller with the same type and HAL name is registered already, it
+	 * keeps the name and this one is not registered. A failure is logged, the
+	 * controller works without JMX.
+	 */
+	public synchronized void register() {
+
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName(DOMAIN + ":type=" + controller.getClass().getSimpleName() + ",name="
+					+ ObjectName.quote(controller.getHALName()));
+
+			StandardMBean mbean = new StandardMBean(this, CaenControllerMBean.class);
+
+			try {
+				server.registerMBean(mbean, objectName);
+				name = objectName;
+
+			} catch (InstanceAlreadyExistsException e) {
+				// unregistering it would let its shutdown remove this one
+				log.warn("register: " + objectName + " is registered by another controller, "
+						+ controller.getHALName() + " is not published through JMX");
+			}
+
+		} catch (Exception e) {
+			log.warn("register: Could not register the MBean of " + controller.getHALName() + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Removes the monitor from the platform MBean server
+	 */
+	public synchronized void unregister() {
+
+		if (name == null) {
+			return;
+		}
+
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+
+		} catch (Exception e) {
+			log.warn("unregister: Could not unregister " + name + ": " + e.getMessage());
+		}
+
+		name = null;
+	}
+
+	public String getHALName() {
+		return controller.getHALName();
+	}
+
+	public boolean isConnected() {
+		return target.isConnected();
+	}
+
+	public String getConnection() {
+		return target.getConnection();
+	}
+
+	public String[] getReadPointNames() {
+		return controller.getReadPointNames();
+	}
+
+	public long getInventoryInterval() {
+		return target.getInventoryInterval();
+	}
+
+	public void setInventoryInterval(long interval) {
+		log.info("setInventoryInterval: " + controller.getHALName() + " inventory interval set to " + interval + " ms");
+		target.setInventoryInterval(interval);
+	}
+
+	public long getRounds() {
+		return metrics.getRounds();
+	}
+
+	public long getRoundsPerSecond() {
+		return metrics.getRoundsPerSecond();
+	}
+
+	public long getTagsPerSecond() {
+		return metrics.getTagsPerSecond();
+	}
+
+	public int getLastInventorySize() {
+		return metrics.getLastRoundTags();
+	}
+
+	public double getLatencyMean() {
+
+		double worst = 0;
+
+		for (String readPointName : controller.getReadPointNames()) {
+			LatencyHistogram latency = metrics.getLatency(readPointName);
+
+			if (latency != null) {
+				worst = Math.max(worst, latency.getMean());
+			}
+		}
+
+		return worst;
+	}
+
+	public long getLatencyP50() {
+		return metrics.getWorstValueAtPercentile(50);
+	}
+
+	public long getLatencyP90() {
+		return metrics.getWorstValueAtPercentile(90);
+	}
+
+	public long getLatencyP99() {
+		return metrics.getWorstValueAtPercentile(99);
+	}
+
+	public long getLatencyMax() {
+		return metrics.getWorstValueAtPercentile(100);
+	}
+
+	public long getExceptions() {
+		return metrics.getExceptionCount();
+	}
+
+	public long getCoalesced() {
+		return metrics.getCoalesced();
+	}
+
+	public long getRejected() {
+		return metrics.getRejected();
+	}
+
+	public long getReconnects() {
+		return metrics.getReconnects();
+	}
+
+	public long getLastRecoveryTime() {
+		return target.getLastRecoveryTime();
+	}
+
+	public boolean isReconnecting() {
+		return target.isReconnecting();
+	}
+
+	public String getBreakerState() {
+		return target.getBreakerState();
+	}
+
+	public void reset() throws Exception {
+
+		log.info("reset: " + controller.getHALName() + " reset through JMX");
+
+		try {
+			controller.reset();
+
+		} catch (HardwareException e) {
+			throw new Exception("reset failed: " + e.getMessage());
+		}
+	}
+
+	public String getParameter(String name) throws Exception {
+
+		try {
+			return controller.getParameter(name);
+
+		} catch (HardwareException e) {
+			throw new Exception("getParameter failed: " + e.getMessage());
+		}
+	}
+}
@@ -5,12 +5,22 @@ package org.fosstrak.hal.impl.caen;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.channels.ClosedByInterruptException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 
+import javax.xml.namespace.QName;
+import javax.xml.soap.SOAPFault;
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.soap.SOAPFaultException;
+
+
 import net.java.dev.jaxb.array.StringArray;
 
 import org.apache.commons.configuration.ConfigurationException;
@@ -18,8 +28,6 @@ import org.apache.commons.configuration.XMLConfiguration;
 import org.apache.log4j.Logger;
 import org.fosstrak.hal.AsynchronousIdentifyListener;
 import org.fosstrak.hal.HardwareException;
-import org.fosstrak.hal.MemoryBankDescriptor;
-import org.fosstrak.hal.MemoryDescriptor;
 import org.fosstrak.hal.Observation;
 import org.fosstrak.hal.OutOfBoundsException;
 import org.fosstrak.hal.ReadPointNotFoundException;
@@ -27,15 +35,14 @@ import org.fosstrak.hal.TagDescriptor;
 import org.fosstrak.hal.Trigger;
 import org.fosstrak.hal.UnsignedByteArray;
 import org.fosstrak.hal.UnsupportedOperationException;
-import org.fosstrak.hal.transponder.EPCTransponderModel;
-import org.fosstrak.hal.transponder.IDType;
-import org.fosstrak.hal.transponder.InventoryItem;
 import org.fosstrak.hal.transponder.RFTechnology;
 import org.fosstrak.hal.transponder.TransponderType;
 import org.fosstrak.hal.util.ResourceLocator;
 
 import com.asisoft.caen.host.service.CaenRFIDProxy;
 import com.asisoft.caen.host.service.CaenRFIDProxyClient;
+import com.asisoft.caen.host.service.InventoryChanges;
+import com.asisoft.caen.host.service.PackedInventory;
 
 /**
  * @author "David Figueroa"
@@ -52,11 +59,6 @@ public class CaenTCPController implements CaenController {
 	 */
 	private String halName;
 
-	/**
-	 * 
-	 */
-	private boolean isConnected = false;
-
 	/**
 	 * The configuration files
 	 */
@@ -70,15 +72,117 @@ public class CaenTCPController implements CaenController {
 	private XMLConfiguration config = null;
 
 	/**
-	 * Proxy port connected to the remote service for method invocation
+	 * Remote readers by read point name, in configuration order
 	 */
-	private CaenRFIDProxy proxyPort;
+	private volatile Map<String, RemoteReader> remoteReaders = new LinkedHashMap<String, RemoteReader>();
 
-	private HashMap<String, InventoryItem> currentInventory = new HashMap<String, InventoryItem>();
+	/**
+	 * Identifies the read points in parallel, null for sequential identify
+	 */
+	private volatile IdentifyExecutor identifyExecutor;
 
-	// Just Registering a name for the remote reader, we know is going to be
-	// just one but we're keeping the interface contract
-	private ArrayList<String> logicalSources;
+	/**
+	 * Clients of the proxy service by endpoint, kept across resets
+	 */
+	private final HashMap<String, CaenRFIDProxyClient> proxyClients = new HashMap<String, CaenRFIDProxyClient>();
+
+	/**
+	 * Tag descriptors shared by all the tags of the same transponder model
+	 */
+	private final TagDescriptorCache tagDescriptors = new TagDescriptorCache();
+
+	/**
+	 * Transponder models shared by all the tags with the same TID prefix
+	 */
+	private final TransponderModelResolver transponderModels = new TransponderModelResolver();
+
+	/**
+	 * TID reported for every tag, the TID cannot be read through the inventory
+	 */
+	private static final byte[] UNKNOWN_TID = { (byte) 0x000 };
+
+	/**
+	 * Prefix of the parameters of the proxy endpoints, followed by the read
+	 * point name
+	 */
+	private static final String ENDPOINTS = "endpoints.";
+
+	/**
+	 * Report only the tags that appeared or disappeared since the previous
+	 * identify of each read point
+	 */
+	private volatile boolean deltaIdentify = false;
+
+	/**
+	 * Previous inventory of every read point, for delta identify
+	 */
+	private final InventoryDelta inventoryDelta = new InventoryDelta();
+
+	/**
+	 * Smooths the presence of tags at the edge of the read field
+	 */
+	private final PresenceFilter presenceFilter = new PresenceFilter();
+
+	/**
+	 * Latency and tag metrics of the remote inventories
+	 */
+	private final InventoryMetrics metrics = new InventoryMetrics();
+
+	/**
+	 * Shares the rounds in progress among concurrent callers
+	 */
+	private final InventoryCoalescer<List<EpcInventoryItem>> inventoryCoalescer = new InventoryCoalescer<List<EpcInventoryItem>>(
+			new InventoryCoalescer.Round<List<EpcInventoryItem>>() {
+
+				public List<EpcInventoryItem> run(String sourceName) throws HardwareException {
+					return readInventory(sourceName);
+				}
+			}, metrics);
+
+	/**
+	 * Shares the identify rounds in progress among concurrent callers, the
+	 * presence filter and the delta see every round once
+	 */
+	private final InventoryCoalescer<IdentifyResult> identifyCoalescer = new InventoryCoalescer<IdentifyResult>(
+			new InventoryCoalescer.Round<IdentifyResult>() {
+
+				public IdentifyResult run(String readPointName) throws HardwareException {
+					return identifyRound(readPointName);
+				}
+			}, metrics);
+
+	/**
+	 * Publishes the controller through JMX
+	 */
+	private final CaenControllerMonitor monitor;
+
+	/**
+	 * True once the proxy has answered, later connections are counted as
+	 * reconnects
+	 */
+	private boolean connectedOnce = false;
+
+	/**
+	 * Minimum interval between two remote inventories in asynchronous mode,
+	 * in milliseconds
+	 */
+	private volatile long pollingInterval;
+
+	/**
+	 * Polls the remote reader for all the asynchronous identify listeners
+	 */
+	private final AsynchronousIdentifier asynchronousIdentifier;
+
+	private final IdentifyExecutor.ReadPointIdentifier readPointIdentifier = new IdentifyExecutor.ReadPointIdentifier() {
+
+		public Observation identify(String readPointName) throws HardwareException {
+			return CaenTCPController.this.identify(readPointName);
+		}
+	};
+
+	// One read point per remote reader, named after the host of the reader
+	// unless configured
+	private ArrayList<String> logicalSources = new ArrayList<String>();
 
 	/**
 	 * 
@@ -88,6 +192,67 @@ public class CaenTCPController implements CaenController {
 	public CaenTCPController(String halName, String configFile) {
 		this.halName = halName;
 		this.configFile = configFile;
+		this.asynchronousIdentifier = new AsynchronousIdentifier(halName, readPointIdentifier);
+		this.monitor = new CaenControllerMonitor(this, metrics, new CaenControllerMonitor.Target() {
+
+			public boolean isConnected() {
+
+				for (RemoteReader reader : remoteReaders.values()) {
+					if (!reader.breaker.allowRequest()) {
+						return false;
+					}
+				}
+
+				return connectedOnce;
+			}
+
+			public String getConnection() {
+
+				StringBuilder connection = new StringBuilder();
+
+				for (RemoteReader reader : remoteReaders.values()) {
+					connection.append(connection.length() == 0 ? "" : "; ").append(reader.name).append('=')
+							.append(reader.endpoints);
+				}
+
+				return connection.toString();
+			}
+
+			public long getInventoryInterval() {
+				return pollingInterval;
+			}
+
+			public void setInventoryInterval(long interval) {
+				pollingInterval = Math.max(0, interval);
+			}
+
+			public long getLastRecoveryTime() {
+				return -1;
+			}
+
+			public boolean isReconnecting() {
+				return false;
+			}
+
+			public String getBreakerState() {
+
+				// OPEN if a breaker is open, else HALF_OPEN if one is probing
+				CircuitBreaker.State worst = CircuitBreaker.State.CLOSED;
+
+				for (RemoteReader reader : remoteReaders.values()) {
+					CircuitBreaker.State state = reader.breaker.getState();
+
+					if (state == CircuitBreaker.State.OPEN) {
+						return state.name();
+					}
+					if (state == CircuitBreaker.State.HALF_OPEN) {
+						worst = state;
+					}
+				}
+
+				return worst.name();
+			}
+		});
 		try {
 			log.debug("trying to initialize " + halName);
 			this.initialize();
@@ -95,6 +260,7 @@ public class CaenTCPController implements CaenController {
 		} catch (Exception e) {
 			log.error("Reader initialization failed", e);
 		}
+		monitor.register();
 	}
 
 	/**
@@ -108,27 +274,43 @@ public class CaenTCPController implements CaenController {
 		config.setListDelimiter(',');
 		URL fileurl = ResourceLocator.getURL(configFile, defaultConfigFile, this.getClass());
 		
-		logicalSources = new ArrayList<String>();
-		
 		try {
 
 			config.load(fileurl);
 
-			String serviceEnpoint = config.getString("readerServiceEndpoint");
-
 			epcTransponderModelsConfig = config.getString("epcTransponderModelsConfig");
+			transponderModels.invalidate(epcTransponderModelsConfig);
+
+			tagDescriptors.invalidate(config.getString("idTypesConfig"));
+
+			deltaIdentify = config.getBoolean("deltaIdentify", false);
+			inventoryDelta.clear();
 
-			URL url = new URL(serviceEnpoint);
+			presenceFilter.configure(config.getInt("presenceMissedRounds", 0), config.getLong("presenceWindow", 0));
 
-			String readerName = url.getHost() + ":" + url.getPort();
-			logicalSources.add(readerName);
+			pollingInterval = config.getLong("pollingInterval", 500);
 
-			// Initializes an connect to the remote server
-			CaenRFIDProxyClient client = new CaenRFIDProxyClient(serviceEnpoint);
+			boolean keepAlive = config.getBoolean("keepAlive", true);
 
-			// Gets the proxy port for the invocation of the remote methods
-			// (specially getInventory)
-			proxyPort = client.getClientPort();
+			initIdentifyExecutor();
+
+			Map<String, RemoteReader> readers = createReaders(keepAlive);
+
+			// readers gone from the configuration no longer report a state
+			for (String name : remoteReaders.keySet()) {
+				if (!readers.containsKey(name)) {
+					metrics.removeBreaker(name);
+				}
+			}
+
+			Map<String, RemoteReader> previous = remoteReaders;
+			remoteReaders = readers;
+			logicalSources = new ArrayList<String>(readers.keySet());
+
+			// the readers of the previous configuration stop probing
+			for (RemoteReader reader : previous.values()) {
+				reader.breaker.shutdown();
+			}
 
 		} catch (ConfigurationException e) {
 			String message = "Error in reader property file";
@@ -152,21 +334,176 @@ public class CaenTCPController implements CaenController {
 	}
 
 	/**
-	 * Tries to connect to reader's proxy service
+	 * Creates the remote readers of the configuration. If the configuration
+	 * is invalid the readers in use are kept and go on probing.
+	 * 
+	 * @param keepAlive
+	 * @return the readers by name
+	 * @throws ConfigurationException
+	 * @throws MalformedURLException
+	 */
+	private Map<String, RemoteReader> createReaders(boolean keepAlive) throws ConfigurationException,
+			MalformedURLException {
+
+		Map<String, RemoteReader> readers = new LinkedHashMap<String, RemoteReader>();
+		boolean created = false;
+
+		try {
+			int numberOfReaders = config.getMaxIndex("remoteReader") + 1;
+
+			if (numberOfReaders == 0) {
+				// a single reader
+				RemoteReader reader = createReader(null, config.getStringArray("readerServiceEndpoint"), keepAlive);
+				readers.put(reader.name, reader);
+			}
+
+			for (int i = 0; i < numberOfReaders; i++) {
+				// key to current reader
+				String key = "remoteReader(" + i + ")";
+
+				RemoteReader reader = createReader(config.getString(key + ".name"), config.getStringArray(key
+						+ ".readerServiceEndpoint"), keepAlive);
+
+				if (readers.containsKey(reader.name)) {
+					throw new ConfigurationException("Duplicate remote reader " + reader.name);
+				}
+				readers.put(reader.name, reader);
+			}
+
+			created = true;
+
+			return readers;
+
+		} finally {
+			if (!created) {
+				for (RemoteReader reader : readers.values()) {
+					reader.breaker.shutdown();
+				}
+
+				// the new breakers replaced the state of the readers in use
+				for (RemoteReader reader : remoteReaders.values()) {
+					metrics.initBreakerState(reader.name, reader.breaker.getState().name());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates a remote reader and the clients of its proxy services, reusing
+	 * the clients of the previous configuration
+	 * 
+	 * @param name
+	 *            read point name, null for the host and port of the first
+	 *            endpoint
+	 * @param serviceEnpoints
+	 *            one or more host computers of the same reader
+	 * @param keepAlive
+	 * @throws MalformedURLException
+	 */
+	private RemoteReader createReader(String name, String[] serviceEnpoints, boolean keepAlive)
+			throws MalformedURLException {
+
+		if (serviceEnpoints.length == 0) {
+			throw new MalformedURLException("no readerServiceEndpoint" + (name == null ? "" : " for " + name));
+		}
+
+		if (name == null) {
+			URL url = new URL(serviceEnpoints[0].trim());
+			name = url.getHost() + ":" + url.getPort();
+		}
+
+		List<String> addresses = new ArrayList<String>();
+		List<CaenRFIDProxy> ports = new ArrayList<CaenRFIDProxy>();
+
+		synchronized (proxyClients) {
+
+			for (String serviceEnpoint : serviceEnpoints) {
+
+				serviceEnpoint = serviceEnpoint.trim();
+				// validates the address
+				new URL(serviceEnpoint);
+
+				// Initializes an connect to the remote server, a reset
+				// keeps the client of the same endpoint
+				CaenRFIDProxyClient client = proxyClients.get(serviceEnpoint);
+
+				if (client == null) {
+					client = new CaenRFIDProxyClient(serviceEnpoint);
+					proxyClients.put(serviceEnpoint, client);
+				}
+
+				client.setKeepAlive(keepAlive);
+				client.setConnectTimeout(config.getInt("connectTimeout", 5000));
+				client.setRequestTimeout(config.getInt("requestTimeout", 10000));
+				client.setCompression(config.getBoolean("compression", false));
+
+				addresses.add(serviceEnpoint);
+				ports.add(client.getClientPort());
+			}
+		}
+
+		// Gets the proxy port for the invocation of the remote methods
+		// (specially getInventory)
+		RedundantProxy port = new RedundantProxy(addresses, ports);
+		port.configure(config.getDouble("hedgePercentile", 95), config.getLong("hedgeMinDelay", 10));
+
+		return new RemoteReader(name, addresses, port);
+	}
+
+	/**
+	 * Creates the thread pool for parallel identify as configured, replacing
+	 * the previous one
+	 */
+	private void initIdentifyExecutor() {
+
+		if (identifyExecutor != null) {
+			identifyExecutor.shutdown();
+			identifyExecutor = null;
+		}
+
+		if (config.getBoolean("parallelIdentify", false)) {
+			int parallelism = config.getInt("maxParallelIdentify", 4);
+			log.debug("Parallel identify enabled, up to " + parallelism + " readers at a time");
+			identifyExecutor = new IdentifyExecutor(halName, parallelism);
+		}
+	}
+
+	/**
+	 * Tries to connect to the proxy services of the readers. Readers not
+	 * answering are probed in background by their circuit breaker
 	 * 
 	 * @throws HardwareException
+	 *             if no reader answers
 	 */
 	protected void initReader() throws HardwareException {
-		try {
 
-			proxyPort.getVersion();
-			isConnected = true;
+		Exception failure = null;
+		int connected = 0;
 
-		} catch (Exception e) {
+		for (RemoteReader reader : remoteReaders.values()) {
+			try {
+				reader.connect();
+				connected++;
+
+				// a reader answering again accepts calls at once
+				reader.breaker.reset();
+
+			} catch (Exception e) {
+				log.error("initReader: " + reader.name + " not answering: " + e.getMessage());
+				failure = e;
+			}
+		}
+
+		if (connected == 0) {
 			String message = "initReader: Network communication error";
-			log.error("initReader: " + message, e);
-			throw new HardwareException(message, e);
+			log.error("initReader: " + message, failure);
+			throw new HardwareException(message, failure);
+		}
+
+		if (connectedOnce) {
+			metrics.recordReconnect();
 		}
+		connectedOnce = true;
 	}
 
 	/*
@@ -176,66 +513,94 @@ public class CaenTCPController implements CaenController {
 	 */
 	public Observation[] identify(String[] readPointNames) throws ReadPointNotFoundException, HardwareException {
 
-		currentInventory.clear();
+		IdentifyExecutor executor = identifyExecutor;
+
+		if (executor != null && readPointNames.length > 1) {
+			// every read point is a reader of its own
+			return executor.identify(readPointNames, readPointNames, readPointIdentifier);
+		}
 
 		Observation[] observations = new Observation[readPointNames.length];
 
 		for (int i = 0; i < readPointNames.length; i++) {
+			observations[i] = identify(readPointNames[i]);
+		}
 
-			observations[i] = new Observation();
-			observations[i].setHalName(getHALName());
-			observations[i].setReadPointName(readPointNames[i]);
+		return observations;
+	}
 
-			List<InventoryItem> inventory = getInventory(readPointNames[i]);
-			List<String> ids = new Vector<String>();
-			List<TagDescriptor> tds = new Vector<TagDescriptor>();
+	/**
+	 * Identifies the tags seen by a single read point
+	 * 
+	 * @param readPointName
+	 * @return the observation of the read point
+	 * @throws HardwareException
+	 */
+	protected Observation identify(String readPointName) throws HardwareException {
+		return identifyCoalescer.get(readPointName).toObservation(getHALName(), readPointName);
+	}
 
-			for (InventoryItem item : inventory) {
+	/**
+	 * Runs an inventory round of a read point and filters it
+	 * 
+	 * @param readPointName
+	 * @return the identified tags
+	 * @throws HardwareException
+	 */
+	private IdentifyResult identifyRound(String readPointName) throws HardwareException {
 
-				String id = item.id;
+		boolean delta = deltaIdentify;
 
-				if (item.transponderType == TransponderType.EPCclass1Gen2) {
+		List<EpcInventoryItem> inventory = readInventory(readPointName);
 
-					IDType idType = IDType.getIdType("EPC", config.getString("idTypesConfig"));
+		int len = inventory.size();
+		EpcKey[] keys = new EpcKey[len];
 
-					EPCTransponderModel tagModel = item.epcTransponderModel;
+		// descriptors are only reported if every tag has one
+		TagDescriptor[] tds_arr = new TagDescriptor[len];
 
-					MemoryBankDescriptor[] memoryBankDescriptors = new MemoryBankDescriptor[4];
-					memoryBankDescriptors[0] = new MemoryBankDescriptor(tagModel.getReservedSize(),
-							tagModel.getReservedReadable(), tagModel.getReservedWriteable());
-					memoryBankDescriptors[1] = new MemoryBankDescriptor(tagModel.getEpcSize(),
-							tagModel.getEpcReadable(), tagModel.getEpcWriteable());
-					memoryBankDescriptors[2] = new MemoryBankDescriptor(tagModel.getTidSize(),
-							tagModel.getTidReadable(), tagModel.getTidWriteable());
-					memoryBankDescriptors[3] = new MemoryBankDescriptor(tagModel.getUserSize(),
-							tagModel.getUserReadable(), tagModel.getUserWriteable());
+		int i = 0;
 
-					MemoryDescriptor memoryDescriptor = new MemoryDescriptor(memoryBankDescriptors);
+		for (EpcInventoryItem item : inventory) {
 
-					TagDescriptor td = new TagDescriptor(idType, memoryDescriptor);
+			if (tds_arr != null && item.transponderType == TransponderType.EPCclass1Gen2) {
+				tds_arr[i] = tagDescriptors.getTagDescriptor(item.epcTransponderModel);
+			} else {
+				tds_arr = null;
+			}
 
-					tds.add(td);
-				}
+			item.readPoint = readPointName;
+			keys[i++] = item.key;
+		}
 
-				item.readPoint = readPointNames[i];
-				ids.add(id);
-				currentInventory.put(id, item);
-			}
-			
-			int len = ids.size();
-			String[] ids_arr = new String[len];
-			ids_arr = ids.toArray(ids_arr);
-
-			if (tds.size() == len) {
-				TagDescriptor[] tds_arr = new TagDescriptor[len];
-				tds_arr = tds.toArray(tds_arr);
-				observations[i].setTagDescriptors(tds_arr);
-			}
-			observations[i].setIds(ids_arr);
-			observations[i].setTimestamp(System.currentTimeMillis());
+		long now = System.currentTimeMillis();
+
+		if (presenceFilter.isEnabled()) {
+			// also keeps the tags missed within the presence window
+			PresenceFilter.Presence presence = presenceFilter.update(readPointName, keys, tds_arr, now);
+			keys = presence.ids;
+			tds_arr = presence.descriptors;
 		}
 
-		return observations;
+		if (delta) {
+			// only the changes since the previous inventory of the read point
+			InventoryDelta.Changes changes = inventoryDelta.update(readPointName, keys);
+			return new IdentifyResult(changes.appeared, changes.gone, null, now);
+		}
+
+		return new IdentifyResult(EpcKey.toHexStrings(keys), null, tds_arr, now);
+	}
+
+	/**
+	 * Inventory of a source. A call arriving while a round of the same source
+	 * is in progress shares the result of that round.
+	 * 
+	 * @param sourceName
+	 * @return the tags seen
+	 * @throws HardwareException
+	 */
+	protected List<EpcInventoryItem> getInventory(String sourceName) throws HardwareException {
+		return inventoryCoalescer.get(sourceName);
 	}
 
 	/**
@@ -244,56 +609,99 @@ public class CaenTCPController implements CaenController {
 	 * @return
 	 * @throws HardwareException
 	 */
-	synchronized protected List<InventoryItem> getInventory(String sourceName) throws HardwareException {
+	private List<EpcInventoryItem> readInventory(String sourceName) throws HardwareException {
+
+		RemoteReader reader = remoteReaders.get(sourceName);
+
+		if (reader == null) {
+			HardwareException e = new HardwareException("getInventory: Not connected to the reader proxy of "
+					+ sourceName);
+			metrics.recordException(sourceName, e);
+			throw e;
+		}
 
-		List<InventoryItem> inventory = new Vector<InventoryItem>();
+		// rounds of different readers run concurrently
+		return reader.readInventory(sourceName);
+	}
+
+	/**
+	 * A proxy older than an operation rejects the request as a client fault
+	 * (Sender in SOAP 1.2). Errors raised by the operation itself, e.g. a
+	 * reader failure, are server faults and do not tell whether the operation
+	 * exists
+	 * 
+	 * @return true if the fault tells that the proxy does not know the
+	 *         operation
+	 */
+	private static boolean isUnknownOperation(SOAPFaultException e) {
 
-		// set transponder type to EPCclass1gen2
-		byte trType = (byte) 0x84;
+		SOAPFault fault = e.getFault();
 
-		if (!isConnected) {
-			// Returning empty inventory
-			return null;
+		if (fault == null) {
+			return false;
 		}
 
-		try {
+		QName code = fault.getFaultCodeAsQName();
 
-			StringArray rawInventory = proxyPort.getInventory();
-			List<String> tagList = rawInventory.getItem();
+		return code != null && ("Client".equals(code.getLocalPart()) || "Sender".equals(code.getLocalPart()));
+	}
 
-			if (tagList == null) {
-				return inventory;
+	/**
+	 * Tells whether a call failed because the calling thread was interrupted,
+	 * as the asynchronous identify and shutdown do. The interrupt flag of the
+	 * thread is set again if the call cleared it.
+	 * 
+	 * @return true if the thread is interrupted or the failure was caused by
+	 *         an interrupt
+	 */
+	private static boolean isInterrupted(Throwable e) {
+
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+
+			if (cause instanceof InterruptedException || cause instanceof ClosedByInterruptException) {
+				Thread.currentThread().interrupt();
+				return true;
 			}
+		}
 
-			log.debug("Inventory size: " + tagList.size());
+		return Thread.currentThread().isInterrupted();
+	}
 
-			for (String tagid : tagList) {
+	/**
+	 * Key of the id of a packed inventory entry
+	 * 
+	 * @param offset
+	 *            offset of the length byte of the entry
+	 */
+	private static EpcKey keyAt(byte[] packed, int offset) {
 
-				InventoryItem item = new InventoryItem();
+		int length = PackedInventory.getIdLength(packed, offset);
 
-				item.transponderType = TransponderType.getType(trType);
-				item.rfTechnology = RFTechnology.getType(trType);
+		if (PackedInventory.isCharacters(packed, offset)) {
+			// an id that is not hex, the same key as parsed from getInventory
+			return EpcKey.ofCharacters(packed, offset + 1, length);
+		}
 
-				byte[] tid = { (byte) 0x000 };
-				item.tid = tid;
+		return EpcKey.of(packed, offset + 1, length);
+	}
 
-				item.epcTransponderModel = EPCTransponderModel.getEpcTrasponderModel(item.tid,
-						epcTransponderModelsConfig);
+	/**
+	 * New inventory item of a tag seen by the remote reader, without id
+	 */
+	private EpcInventoryItem createItem(byte trType, String sourceName) {
 
-				item.id = tagid;
-				item.readPoint = sourceName;
+		EpcInventoryItem item = new EpcInventoryItem();
 
-				inventory.add(item);
-			}
+		item.transponderType = TransponderType.getType(trType);
+		item.rfTechnology = RFTechnology.getType(trType);
 
-			return inventory;
+		item.tid = UNKNOWN_TID;
 
-		} catch (Exception e) {
+		item.epcTransponderModel = transponderModels.resolve(item.tid);
 
-			// isConnected = false;
+		item.readPoint = sourceName;
 
-			throw new HardwareException("getInventory: " + e.getMessage(), e);
-		}
+		return item;
 	}
 
 	/*
@@ -306,7 +714,18 @@ public class CaenTCPController implements CaenController {
 	public void startAsynchronousIdentify(String[] readPointNames, Trigger trigger) throws ReadPointNotFoundException,
 			HardwareException, UnsupportedOperationException {
 
-		throw new UnsupportedOperationException("startAsynchronousIdentify: Unsupported method");
+		// one remote inventory per interval, whatever the number of listeners
+		long interval = Math.max(AsynchronousIdentifier.getInterval(trigger), pollingInterval);
+
+		for (String readPointName : readPointNames) {
+			if (!logicalSources.contains(readPointName)) {
+				throw new ReadPointNotFoundException("startAsynchronousIdentify: Unknown read point " + readPointName);
+			}
+		}
+
+		log.info("Starting asynchronous identify on " + Arrays.toString(readPointNames) + " every " + interval
+				+ " ms");
+		asynchronousIdentifier.start(readPointNames, interval);
 	}
 
 	/*
@@ -316,7 +735,8 @@ public class CaenTCPController implements CaenController {
 	 */
 	public void stopAsynchronousIdentify() throws HardwareException, UnsupportedOperationException {
 
-		throw new UnsupportedOperationException("stopAsynchronousIdentify: Unsupported method");
+		log.info("Stopping asynchronous identify");
+		asynchronousIdentifier.stop();
 	}
 
 	/*
@@ -326,7 +746,7 @@ public class CaenTCPController implements CaenController {
 	 */
 	public boolean isAsynchronousIdentifyRunning() throws HardwareException, UnsupportedOperationException {
 
-		return false;
+		return asynchronousIdentifier.isRunning();
 	}
 
 	/*
@@ -339,7 +759,7 @@ public class CaenTCPController implements CaenController {
 	public void addAsynchronousIdentifyListener(AsynchronousIdentifyListener listener) throws HardwareException,
 			UnsupportedOperationException {
 
-		throw new UnsupportedOperationException("addAsynchronousIdentifyListener: Unsupported method");
+		asynchronousIdentifier.addListener(listener);
 	}
 
 	/*
@@ -352,7 +772,7 @@ public class CaenTCPController implements CaenController {
 	public void removeAsynchronousIdentifyListener(AsynchronousIdentifyListener listener) throws HardwareException,
 			UnsupportedOperationException {
 
-		throw new UnsupportedOperationException("removeAsynchronousIdentifyListener: Unsupported method");
+		asynchronousIdentifier.removeListener(listener);
 	}
 
 	/*
@@ -362,7 +782,7 @@ public class CaenTCPController implements CaenController {
 	 */
 	public boolean supportsAsynchronousIdentify() {
 
-		return false;
+		return true;
 	}
 
 	/*
@@ -495,6 +915,12 @@ public class CaenTCPController implements CaenController {
 				}
 			}
 
+			names.addAll(metrics.getParameterNames());
+
+			for (RemoteReader reader : remoteReaders.values()) {
+				names.addAll(reader.proxyPort.getParameterNames(ENDPOINTS + reader.name + "."));
+			}
+
 			String[] namesarray = new String[names.size()];
 			namesarray = names.toArray(namesarray);
 
@@ -513,6 +939,35 @@ public class CaenTCPController implements CaenController {
 	 */
 	public String getParameter(String param) throws HardwareException, UnsupportedOperationException {
 		try {
+			// transponder model cache counters
+			if ("transponderModelCache.hits".equals(param)) {
+				return String.valueOf(transponderModels.getHits());
+			}
+			if ("transponderModelCache.misses".equals(param)) {
+				return String.valueOf(transponderModels.getMisses());
+			}
+
+			// asynchronous identify
+			if ("asynchronousIdentify.dropped".equals(param)) {
+				return String.valueOf(asynchronousIdentifier.getDropped());
+			}
+
+			// inventory metrics
+			if (param.startsWith(InventoryMetrics.PREFIX)) {
+				return metrics.getParameter(param);
+			}
+
+			// proxy endpoints of each reader
+			if (param.startsWith(ENDPOINTS)) {
+				for (RemoteReader reader : remoteReaders.values()) {
+					String prefix = ENDPOINTS + reader.name + ".";
+
+					if (param.startsWith(prefix)) {
+						return reader.proxyPort.getParameter(param.substring(prefix.length()));
+					}
+				}
+			}
+
 			// config file parameter
 			String value = config.getString(param);
 			return value;
@@ -552,6 +1007,28 @@ public class CaenTCPController implements CaenController {
 		initialize();
 	}
 
+	/* (non-Javadoc)
+	 * @see org.fosstrak.hal.impl.caen.CaenController#shutdown()
+	 */
+	public void shutdown() {
+
+		log.info("shutdown: Caen HAL is going to shut down");
+
+		asynchronousIdentifier.stop();
+
+		// the platform MBean server would keep the controller reachable
+		monitor.unregister();
+
+		if (identifyExecutor != null) {
+			identifyExecutor.shutdown();
+			identifyExecutor = null;
+		}
+
+		for (RemoteReader reader : remoteReaders.values()) {
+			reader.breaker.shutdown();
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -681,4 +1158,269 @@ public class CaenTCPController implements CaenController {
 		return true;
 	}
 
+	/**
+	 * A remote reader, one read point of the controller, reachable through the
+	 * proxy service of one or more host computers
+	 */
+	private class RemoteReader {
+
+		final String name;
+
+		/**
+		 * Endpoints of the proxy services, comma separated
+		 */
+		final String endpoints;
+
+		/**
+		 * Proxy port connected to the remote service for method invocation,
+		 * over all the endpoints of the reader
+		 */
+		final RedundantProxy proxyPort;
+
+		/**
+		 * Rejects the calls while the proxy does not answer
+		 */
+		final CircuitBreaker breaker;
+
+		/**
+		 * Request only the changes of the inventory since the last one,
+		 * cleared when the proxy does not support it
+		 */
+		volatile boolean incrementalInventory;
+
+		/**
+		 * Request the inventory in the packed binary form, cleared when the
+		 * proxy does not support it
+		 */
+		volatile boolean packedInventory;
+
+		/**
+		 * Set once the proxy answered the operation, a later fault is then an
+		 * error and not a missing operation
+		 */
+		boolean incrementalConfirmed = false;
+		boolean packedConfirmed = false;
+
+		/**
+		 * Remote inventory kept up to date by the incremental inventory, and
+		 * the generation of the proxy it matches, -1 for none
+		 */
+		final LinkedHashMap<EpcKey, EpcInventoryItem> remoteInventory = new LinkedHashMap<EpcKey, EpcInventoryItem>();
+		long inventoryGeneration = -1;
+
+		RemoteReader(String name, List<String> addresses, RedundantProxy proxyPort) {
+
+			this.name = name;
+			this.proxyPort = proxyPort;
+
+			StringBuilder joined = new StringBuilder();
+
+			for (String address : addresses) {
+				joined.append(joined.length() == 0 ? "" : ",").append(address);
+			}
+			this.endpoints = joined.toString();
+
+			incrementalInventory = config.getBoolean("incrementalInventory", true);
+			packedInventory = config.getBoolean("packedInventory", true);
+
+			breaker = new CircuitBreaker(halName + "-" + name, name, new CircuitBreaker.Probe() {
+
+				public void probe() throws Exception {
+					RemoteReader.this.proxyPort.getVersion();
+				}
+			}, metrics);
+			breaker.configure(config.getInt("breakerFailureThreshold", 5), config.getLong("breakerCoolDown", 5000));
+		}
+
+		/**
+		 * Checks that the proxy answers, otherwise opens the breaker so that
+		 * it is probed in background
+		 */
+		void connect() {
+
+			try {
+				proxyPort.getVersion();
+
+			} catch (RuntimeException e) {
+				breaker.open("not answering at startup");
+				throw e;
+			}
+		}
+
+		/**
+		 * Runs an inventory round on the reader
+		 * 
+		 * @param sourceName
+		 * @return the tags seen
+		 * @throws HardwareException
+		 */
+		synchronized List<EpcInventoryItem> readInventory(String sourceName) throws HardwareException {
+
+			List<EpcInventoryItem> inventory = new Vector<EpcInventoryItem>();
+
+			// set transponder type to EPCclass1gen2
+			byte trType = (byte) 0x84;
+
+			if (!breaker.allowRequest()) {
+				metrics.recordRejected(sourceName);
+				throw new HardwareException("getInventory: Reader proxy not answering, calls rejected until it recovers");
+			}
+
+			long start = System.nanoTime();
+
+			try {
+
+				if (incrementalInventory) {
+					try {
+						byte[] changes = proxyPort.getInventoryChanges(inventoryGeneration);
+						breaker.success();
+						incrementalConfirmed = true;
+
+						applyChanges(changes, trType, sourceName);
+						inventory.addAll(remoteInventory.values());
+
+						metrics.recordRound(sourceName, System.nanoTime() - start, inventory.size());
+
+						return inventory;
+
+					} catch (SOAPFaultException e) {
+						if (incrementalConfirmed || !isUnknownOperation(e)) {
+							throw e;
+						}
+						// proxies older than the incremental operation answer with a fault
+						log.info("getInventory: Incremental inventory not available on the proxy: " + e.getMessage());
+						incrementalInventory = false;
+					}
+				}
+
+				if (packedInventory) {
+					try {
+						byte[] packed = proxyPort.getInventoryPacked();
+						breaker.success();
+						packedConfirmed = true;
+						int count = PackedInventory.getCount(packed);
+						int offset = PackedInventory.HEADER_LENGTH;
+
+						log.debug("Inventory size: " + count);
+
+						for (int i = 0; i < count; i++) {
+							int length = PackedInventory.getIdLength(packed, offset);
+
+							if (offset + 1 + length > packed.length) {
+								throw new IllegalArgumentException("Truncated packed inventory");
+							}
+
+							// the hex id is only produced if an observation reports the tag
+							EpcInventoryItem item = createItem(trType, sourceName);
+							item.key = keyAt(packed, offset);
+							inventory.add(item);
+
+							offset += 1 + length;
+						}
+
+						metrics.recordRound(sourceName, System.nanoTime() - start, count);
+
+						return inventory;
+
+					} catch (SOAPFaultException e) {
+						if (packedConfirmed || !isUnknownOperation(e)) {
+							throw e;
+						}
+						// proxies older than the packed operation answer with a fault
+						log.info("getInventory: Packed inventory not available on the proxy, using getInventory: "
+								+ e.getMessage());
+						packedInventory = false;
+					}
+				}
+
+				StringArray rawInventory = proxyPort.getInventory();
+				breaker.success();
+				List<String> tagList = rawInventory.getItem();
+
+				if (tagList == null) {
+					metrics.recordRound(sourceName, System.nanoTime() - start, 0);
+					return inventory;
+				}
+
+				log.debug("Inventory size: " + tagList.size());
+
+				for (String tagid : tagList) {
+
+					EpcInventoryItem item = createItem(trType, sourceName);
+
+					item.id = tagid;
+					item.key = EpcKey.parse(tagid);
+
+					inventory.add(item);
+				}
+
+				metrics.recordRound(sourceName, System.nanoTime() - start, tagList.size());
+
+				return inventory;
+
+			} catch (Exception e) {
+
+				metrics.recordException(sourceName, e);
+
+				// the proxy may have moved on, resync with the next inventory
+				inventoryGeneration = -1;
+
+				// a fault is an answer, only a proxy not answering counts, and
+				// a call interrupted by a stop says nothing about the proxy
+				if (e instanceof WebServiceException && !(e instanceof SOAPFaultException) && !isInterrupted(e)) {
+					breaker.failure();
+				}
+
+				// isConnected = false;
+
+				throw new HardwareException("getInventory: " + e.getMessage(), e);
+			}
+		}
+
+		/**
+		 * Applies a reply of getInventoryChanges to the remote inventory
+		 * 
+		 * @param changes
+		 *            encoded as described in InventoryChanges
+		 */
+		void applyChanges(byte[] changes, byte trType, String sourceName) {
+
+			long generation = InventoryChanges.getGeneration(changes);
+			int removedOffset = InventoryChanges.getRemovedOffset(changes);
+
+			// validates the removed list before anything is applied
+			PackedInventory.skip(changes, removedOffset);
+
+			if (InventoryChanges.isFull(changes)) {
+				log.debug("applyChanges: Full inventory at generation " + generation);
+				remoteInventory.clear();
+			}
+
+			int offset = InventoryChanges.ADDED_OFFSET;
+			int added = PackedInventory.getCount(changes, offset);
+			offset += PackedInventory.HEADER_LENGTH;
+
+			for (int i = 0; i < added; i++) {
+				EpcKey key = keyAt(changes, offset);
+
+				if (!remoteInventory.containsKey(key)) {
+					EpcInventoryItem item = createItem(trType, sourceName);
+					item.key = key;
+					remoteInventory.put(key, item);
+				}
+				offset += 1 + PackedInventory.getIdLength(changes, offset);
+			}
+
+			offset = removedOffset;
+			int removed = PackedInventory.getCount(changes, offset);
+			offset += PackedInventory.HEADER_LENGTH;
+
+			for (int i = 0; i < removed; i++) {
+				remoteInventory.remove(keyAt(changes, offset));
+				offset += 1 + PackedInventory.getIdLength(changes, offset);
+			}
+
+			inventoryGeneration = generation;
+		}
+	}
 }
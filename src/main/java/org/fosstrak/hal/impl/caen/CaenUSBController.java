@@ -6,6 +6,7 @@ package org.fosstrak.hal.impl.caen;
 import gnu.io.CommPortIdentifier;
 
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -18,8 +19,6 @@ import org.apache.commons.configuration.XMLConfiguration;
 import org.apache.log4j.Logger;
 import org.fosstrak.hal.AsynchronousIdentifyListener;
 import org.fosstrak.hal.HardwareException;
-import org.fosstrak.hal.MemoryBankDescriptor;
-import org.fosstrak.hal.MemoryDescriptor;
 import org.fosstrak.hal.Observation;
 import org.fosstrak.hal.OutOfBoundsException;
 import org.fosstrak.hal.ReadPointNotFoundException;
@@ -27,12 +26,8 @@ import org.fosstrak.hal.TagDescriptor;
 import org.fosstrak.hal.Trigger;
 import org.fosstrak.hal.UnsignedByteArray;
 import org.fosstrak.hal.UnsupportedOperationException;
-import org.fosstrak.hal.transponder.EPCTransponderModel;
-import org.fosstrak.hal.transponder.IDType;
-import org.fosstrak.hal.transponder.InventoryItem;
 import org.fosstrak.hal.transponder.RFTechnology;
 import org.fosstrak.hal.transponder.TransponderType;
-import org.fosstrak.hal.util.ByteBlock;
 import org.fosstrak.hal.util.ResourceLocator;
 
 import com.caen.RFIDLibrary.CAENRFIDException;
@@ -67,7 +62,22 @@ public class CaenUSBController implements CaenController {
 	/**
 	 * 
 	 */
-	private boolean isConnected = false;
+	private volatile boolean isConnected = false;
+
+	/**
+	 * Serializes the connection attempts to the reader
+	 */
+	private final Object connectLock = new Object();
+
+	/**
+	 * Set by shutdown, the reader is not connected again afterwards
+	 */
+	private volatile boolean shutdown = false;
+
+	/**
+	 * Reconnects the reader in background when the connection is lost
+	 */
+	private final ReconnectSupervisor reconnectSupervisor;
 
 	/**
 	 * The configuration files
@@ -81,7 +91,25 @@ public class CaenUSBController implements CaenController {
 	 */
 	private XMLConfiguration config = null;
 
-	private HashMap<String, InventoryItem> currentInventory = new HashMap<String, InventoryItem>();
+	/**
+	 * Tag descriptors shared by all the tags of the same transponder model
+	 */
+	private final TagDescriptorCache tagDescriptors = new TagDescriptorCache();
+
+	/**
+	 * Transponder models shared by all the tags with the same TID prefix
+	 */
+	private final TransponderModelResolver transponderModels = new TransponderModelResolver();
+
+	/**
+	 * TID reported for every tag, the TID cannot be read through the inventory
+	 */
+	private static final byte[] UNKNOWN_TID = { (byte) 0x000 };
+
+	/**
+	 * Longest wait for the reconnect thread on shutdown, in milliseconds
+	 */
+	private static final long SHUTDOWN_TIMEOUT = 5000;
 
 	/**
 	 * Number of read points
@@ -94,12 +122,129 @@ public class CaenUSBController implements CaenController {
 	private HashMap<String, String> logicalSources;
 	private HashMap<String, String> antennaNames;
 
+	/**
+	 * Report only the tags that appeared or disappeared since the previous
+	 * identify of each read point
+	 */
+	private volatile boolean deltaIdentify = false;
+
+	/**
+	 * Previous inventory of every read point, for delta identify
+	 */
+	private final InventoryDelta inventoryDelta = new InventoryDelta();
+
+	/**
+	 * Smooths the presence of tags at the edge of the read field
+	 */
+	private final PresenceFilter presenceFilter = new PresenceFilter();
+
+	/**
+	 * Paces the inventory rounds sent to the reader
+	 */
+	private final InventoryPacer pacer = new InventoryPacer();
+
+	/**
+	 * Latency and tag metrics of the inventory rounds
+	 */
+	private final InventoryMetrics metrics = new InventoryMetrics();
+
+	/**
+	 * Shares the rounds in progress among concurrent callers
+	 */
+	private final InventoryCoalescer<List<EpcInventoryItem>> inventoryCoalescer = new InventoryCoalescer<List<EpcInventoryItem>>(
+			new InventoryCoalescer.Round<List<EpcInventoryItem>>() {
+
+				public List<EpcInventoryItem> run(String sourceName) throws HardwareException {
+					return readInventory(sourceName);
+				}
+			}, metrics);
+
+	/**
+	 * Shares the identify rounds in progress among concurrent callers, the
+	 * presence filter and the delta see every round once
+	 */
+	private final InventoryCoalescer<IdentifyResult> identifyCoalescer = new InventoryCoalescer<IdentifyResult>(
+			new InventoryCoalescer.Round<IdentifyResult>() {
+
+				public IdentifyResult run(String readPointName) throws HardwareException {
+					return identifyRound(readPointName);
+				}
+			}, metrics);
+
+	/**
+	 * Publishes the controller through JMX
+	 */
+	private final CaenControllerMonitor monitor;
+
+	/**
+	 * True once the reader has been connected, later connections are counted
+	 * as reconnects
+	 */
+	private boolean connectedOnce = false;
+
+	/**
+	 * Continuous identify for the asynchronous mode
+	 */
+	private final AsynchronousIdentifier asynchronousIdentifier;
+
+	private final IdentifyExecutor.ReadPointIdentifier readPointIdentifier = new IdentifyExecutor.ReadPointIdentifier() {
+
+		public Observation identify(String readPointName) throws HardwareException {
+			return CaenUSBController.this.identify(readPointName);
+		}
+	};
+
 	/**
 	 * 
 	 */
 	public CaenUSBController(String halName, String configFile) {
 		this.halName = halName;
 		this.configFile = configFile;
+		this.asynchronousIdentifier = new AsynchronousIdentifier(halName, readPointIdentifier);
+		this.reconnectSupervisor = new ReconnectSupervisor(halName, new ReconnectSupervisor.Target() {
+
+			public boolean isConnected() {
+				return isConnected;
+			}
+
+			public String[] getCandidatePorts() {
+				return getReconnectPorts();
+			}
+
+			public void connect(String port) throws HardwareException {
+				initReader(port);
+			}
+		});
+		this.monitor = new CaenControllerMonitor(this, metrics, new CaenControllerMonitor.Target() {
+
+			public boolean isConnected() {
+				return isConnected;
+			}
+
+			public String getConnection() {
+				return comPort;
+			}
+
+			public long getInventoryInterval() {
+				return pacer.getMinInterval();
+			}
+
+			public void setInventoryInterval(long interval) {
+				pacer.setMinInterval(interval);
+			}
+
+			public long getLastRecoveryTime() {
+				return reconnectSupervisor.getLastRecoveryTime();
+			}
+
+			public boolean isReconnecting() {
+				return reconnectSupervisor.isReconnecting();
+			}
+
+			public String getBreakerState() {
+				return null;
+			}
+		});
 		try {
 			log.debug("trying to initialize " + halName);
 			this.initialize();
@@ -107,6 +252,7 @@ public class CaenUSBController implements CaenController {
 		} catch (Exception e) {
 			log.error("Reader initialization failed", e);
 		}
+		monitor.register();
 	}
 
 	/**
@@ -128,6 +274,19 @@ public class CaenUSBController implements CaenController {
 			this.comPort = config.getString("comPort");
 
 			this.epcTransponderModelsConfig = config.getString("epcTransponderModelsConfig");
+			transponderModels.invalidate(epcTransponderModelsConfig);
+
+			tagDescriptors.invalidate(config.getString("idTypesConfig"));
+
+			deltaIdentify = config.getBoolean("deltaIdentify", false);
+			inventoryDelta.clear();
+
+			presenceFilter.configure(config.getInt("presenceMissedRounds", 0), config.getLong("presenceWindow", 0));
+
+			pacer.setMinInterval(config.getLong("minInventoryInterval", 0));
+
+			reconnectSupervisor.setBackoff(config.getLong("reconnectInitialBackoff", 500),
+					config.getLong("reconnectMaxBackoff", 30000));
 
 			logicalSources = new HashMap<String, String>();
 			antennaNames = new HashMap<String, String>();
@@ -184,33 +343,92 @@ public class CaenUSBController implements CaenController {
 	 */
 	protected void initReader(String comPort) throws HardwareException {
 
-		try {
+		// the reconnect supervisor and reset may connect concurrently
+		synchronized (connectLock) {
 
-			if (reader != null) {
-				reader.Disconnect();
+			if (shutdown) {
+				throw new HardwareException("initReader: Controller is shut down");
 			}
 
-		} catch (CAENRFIDException e) {
-			String message = "initReader: Error disconnecting from reader";
-			log.error(message, e);
+			try {
+
+				disconnectReader();
+
+			} catch (CAENRFIDException e) {
+				String message = "initReader: Error disconnecting from reader";
+				log.error(message, e);
+			}
+
+			try {
+
+				connectReader(comPort);
+
+				if (connectedOnce) {
+					metrics.recordReconnect();
+				}
+				connectedOnce = true;
+				isConnected = true;
+
+				// Updating the value to the connected serial port
+				this.comPort = comPort;
+
+			} catch (CAENRFIDException e) {
+				String message = "initReader: Port configuration error";
+				log.error(message, e);
+				throw new HardwareException(message, e);
+			}
 		}
+	}
+
+	/**
+	 * Connects to the CAEN reader on the given serial port
+	 * 
+	 * @param comPort
+	 * @throws CAENRFIDException
+	 */
+	protected void connectReader(String comPort) throws CAENRFIDException {
 
 		reader = new CAENRFIDReader();
+		reader.Connect(CAENRFIDPort.CAENRFID_RS232, comPort);
+	}
 
-		try {
+	/**
+	 * Disconnects from the CAEN reader, if any
+	 * 
+	 * @throws CAENRFIDException
+	 */
+	protected void disconnectReader() throws CAENRFIDException {
 
-			reader.Connect(CAENRFIDPort.CAENRFID_RS232, comPort);
+		if (reader != null) {
+			reader.Disconnect();
+		}
+	}
 
-			isConnected = true;
+	/**
+	 * Runs one inventory round on a logical source of the reader
+	 * 
+	 * @param sourceName
+	 *            the logical source
+	 * @return ids of the tags seen, null if none
+	 * @throws CAENRFIDException
+	 */
+	protected byte[][] inventoryRound(String sourceName) throws CAENRFIDException {
 
-			// Updating the value to the connected serial port
-			this.comPort = comPort;
+		CAENRFIDLogicalSource source = reader.GetSource(sourceName);
 
-		} catch (CAENRFIDException e) {
-			String message = "initReader: Port configuration error";
-			log.error(message, e);
-			throw new HardwareException(message, e);
+		CAENRFIDTag[] inventoryTags = source.InventoryTag();
+
+		if (inventoryTags == null) {
+			return null;
+		}
+
+		byte[][] ids = new byte[inventoryTags.length][];
+
+		for (int i = 0; i < inventoryTags.length; i++) {
+			ids[i] = inventoryTags[i].GetId();
 		}
+
+		return ids;
 	}
 
 	/*
@@ -223,7 +441,7 @@ public class CaenUSBController implements CaenController {
 	public void addAsynchronousIdentifyListener(AsynchronousIdentifyListener listener) throws HardwareException,
 			UnsupportedOperationException {
 
-		throw new UnsupportedOperationException("addAsynchronousIdentifyListener: Unsupported method");
+		asynchronousIdentifier.addListener(listener);
 	}
 
 	/*
@@ -247,6 +465,8 @@ public class CaenUSBController implements CaenController {
 				}
 			}
 
+			names.addAll(metrics.getParameterNames());
+
 			String[] namesarray = new String[names.size()];
 			namesarray = names.toArray(namesarray);
 
@@ -275,6 +495,40 @@ public class CaenUSBController implements CaenController {
 	public String getParameter(String param) throws HardwareException, UnsupportedOperationException {
 
 		try {
+			// transponder model cache counters
+			if ("transponderModelCache.hits".equals(param)) {
+				return String.valueOf(transponderModels.getHits());
+			}
+			if ("transponderModelCache.misses".equals(param)) {
+				return String.valueOf(transponderModels.getMisses());
+			}
+
+			// inventory pacing
+			if ("inventoryPacer.roundsPerSecond".equals(param)) {
+				return String.valueOf(pacer.getRoundsPerSecond());
+			}
+			if ("inventoryPacer.interRoundGap".equals(param)) {
+				return String.valueOf(pacer.getInterRoundGap());
+			}
+
+			// reconnect supervisor
+			if ("reconnect.count".equals(param)) {
+				return String.valueOf(reconnectSupervisor.getReconnects());
+			}
+			if ("reconnect.lastRecoveryTime".equals(param)) {
+				return String.valueOf(reconnectSupervisor.getLastRecoveryTime());
+			}
+
+			// asynchronous identify
+			if ("asynchronousIdentify.dropped".equals(param)) {
+				return String.valueOf(asynchronousIdentifier.getDropped());
+			}
+
+			// inventory metrics
+			if (param.startsWith(InventoryMetrics.PREFIX)) {
+				return metrics.getParameter(param);
+			}
+
 			// config file parameter
 			String value = config.getString(param);
 			return value;
@@ -339,67 +593,92 @@ public class CaenUSBController implements CaenController {
 	 */
 	public Observation[] identify(String[] readPointNames) throws HardwareException {
 
-		currentInventory.clear();
-
+		// the logical sources share the reader on comPort, which runs one
+		// inventory round at a time
 		Observation[] observations = new Observation[readPointNames.length];
 
 		for (int i = 0; i < readPointNames.length; i++) {
+			observations[i] = identify(readPointNames[i]);
+		}
 
-			// log.debug("Readpoint: " + readPointNames[i]);
-
-			observations[i] = new Observation();
-			observations[i].setHalName(getHALName());
-			observations[i].setReadPointName(readPointNames[i]);
+		return observations;
+	}
 
-			List<InventoryItem> inventory = getInventory(readPointNames[i]);
-			List<String> ids = new Vector<String>();
-			List<TagDescriptor> tds = new Vector<TagDescriptor>();
+	/**
+	 * Identifies the tags seen by a single read point
+	 * 
+	 * @param readPointName
+	 * @return the observation of the read point, timestamped when its
+	 *         inventory completes
+	 * @throws HardwareException
+	 */
+	protected Observation identify(String readPointName) throws HardwareException {
+		return identifyCoalescer.get(readPointName).toObservation(getHALName(), readPointName);
+	}
 
-			for (InventoryItem item : inventory) {
-				String id = item.id;
+	/**
+	 * Runs an inventory round of a read point and filters it
+	 * 
+	 * @param readPointName
+	 * @return the identified tags
+	 * @throws HardwareException
+	 */
+	private IdentifyResult identifyRound(String readPointName) throws HardwareException {
 
-				if (item.transponderType == TransponderType.EPCclass1Gen2) {
+		// log.debug("Readpoint: " + readPointName);
 
-					IDType idType = IDType.getIdType("EPC", config.getString("idTypesConfig"));
+		boolean delta = deltaIdentify;
 
-					EPCTransponderModel tagModel = item.epcTransponderModel;
+		List<EpcInventoryItem> inventory = readInventory(readPointName);
 
-					MemoryBankDescriptor[] memoryBankDescriptors = new MemoryBankDescriptor[4];
-					memoryBankDescriptors[0] = new MemoryBankDescriptor(tagModel.getReservedSize(),
-							tagModel.getReservedReadable(), tagModel.getReservedWriteable());
-					memoryBankDescriptors[1] = new MemoryBankDescriptor(tagModel.getEpcSize(),
-							tagModel.getEpcReadable(), tagModel.getEpcWriteable());
-					memoryBankDescriptors[2] = new MemoryBankDescriptor(tagModel.getTidSize(),
-							tagModel.getTidReadable(), tagModel.getTidWriteable());
-					memoryBankDescriptors[3] = new MemoryBankDescriptor(tagModel.getUserSize(),
-							tagModel.getUserReadable(), tagModel.getUserWriteable());
+		int len = inventory.size();
+		EpcKey[] keys = new EpcKey[len];
 
-					MemoryDescriptor memoryDescriptor = new MemoryDescriptor(memoryBankDescriptors);
+		// descriptors are only reported if every tag has one
+		TagDescriptor[] tds_arr = new TagDescriptor[len];
 
-					TagDescriptor td = new TagDescriptor(idType, memoryDescriptor);
+		int i = 0;
 
-					tds.add(td);
-				}
+		for (EpcInventoryItem item : inventory) {
 
-				item.readPoint = readPointNames[i];
-				ids.add(id);
-				currentInventory.put(id, item);
+			if (tds_arr != null && item.transponderType == TransponderType.EPCclass1Gen2) {
+				tds_arr[i] = tagDescriptors.getTagDescriptor(item.epcTransponderModel);
+			} else {
+				tds_arr = null;
 			}
 
-			int len = ids.size();
-			String[] ids_arr = new String[len];
-			ids_arr = ids.toArray(ids_arr);
+			item.readPoint = readPointName;
+			keys[i++] = item.key;
+		}
 
-			if (tds.size() == len) {
-				TagDescriptor[] tds_arr = new TagDescriptor[len];
-				tds_arr = tds.toArray(tds_arr);
-				observations[i].setTagDescriptors(tds_arr);
-			}
-			observations[i].setIds(ids_arr);
-			observations[i].setTimestamp(System.currentTimeMillis());
+		long now = System.currentTimeMillis();
+
+		if (presenceFilter.isEnabled()) {
+			// also keeps the tags missed within the presence window
+			PresenceFilter.Presence presence = presenceFilter.update(readPointName, keys, tds_arr, now);
+			keys = presence.ids;
+			tds_arr = presence.descriptors;
 		}
 
-		return observations;
+		if (delta) {
+			// only the changes since the previous inventory of the read point
+			InventoryDelta.Changes changes = inventoryDelta.update(readPointName, keys);
+			return new IdentifyResult(changes.appeared, changes.gone, null, now);
+		}
+
+		return new IdentifyResult(EpcKey.toHexStrings(keys), null, tds_arr, now);
+	}
+
+	/**
+	 * Inventory of a source. A call arriving while a round of the same source
+	 * is in progress shares the result of that round.
+	 * 
+	 * @param sourceName
+	 * @return the tags seen
+	 * @throws HardwareException
+	 */
+	protected List<EpcInventoryItem> getInventory(String sourceName) throws HardwareException {
+		return inventoryCoalescer.get(sourceName);
 	}
 
 	/**
@@ -409,25 +688,37 @@ public class CaenUSBController implements CaenController {
 	 * @throws HardwareException
 	 *             if an error occurs
 	 */
-	synchronized protected List<InventoryItem> getInventory(String sourceName) throws HardwareException {
+	synchronized private List<EpcInventoryItem> readInventory(String sourceName) throws HardwareException {
 
-		List<InventoryItem> inventory = new Vector<InventoryItem>();
+		List<EpcInventoryItem> inventory = new Vector<EpcInventoryItem>();
 
 		// set transponder type to EPCclass1gen2
 		byte trType = (byte) 0x84;
 
 		try {
 
+			if (shutdown) {
+				throw new HardwareException("getInventory: Controller is shut down");
+			}
+
 			if (!isConnected) {
-				// Returning empty inventory
-				return null;
+				// Fail fast while the supervisor reconnects
+				reconnectSupervisor.requestReconnect();
+				HardwareException e = new HardwareException("getInventory: Reader is not connected, reconnecting");
+				metrics.recordException(sourceName, e);
+				throw e;
 			}
 
-			CAENRFIDLogicalSource source = reader.GetSource(sourceName);
+			// waits only if a minimum interval between rounds is configured
+			pacer.beginRound();
+
+			// the wait for the pacer is not part of the round latency
+			long start = System.nanoTime();
 
-			CAENRFIDTag[] inventoryTags = source.InventoryTag();
+			byte[][] inventoryTags = inventoryRound(sourceName);
 
 			if (inventoryTags == null) {
+				metrics.recordRound(sourceName, System.nanoTime() - start, 0);
 				// Returning empty inventory
 				//return null;
 				return inventory;
@@ -435,73 +726,78 @@ public class CaenUSBController implements CaenController {
 
 			log.debug("Inventory size: " + inventoryTags.length);
 
-			for (CAENRFIDTag caenTag : inventoryTags) {
+			for (byte[] tagId : inventoryTags) {
 
-				InventoryItem item = new InventoryItem();
+				EpcInventoryItem item = new EpcInventoryItem();
 
 				item.transponderType = TransponderType.getType(trType);
-				log.debug("Item TransType: " + item.transponderType.name());
+				if (log.isDebugEnabled()) {
+					log.debug("Item TransType: " + item.transponderType.name());
+				}
 				item.rfTechnology = RFTechnology.getType(trType);
 
 				// item.tid = caenTag.GetTID(); // Eres el culpable del null
 				// Cannot get TID from caen API
-				byte[] tid = { (byte) 0x000 };
-				item.tid = tid;
+				item.tid = UNKNOWN_TID;
 
-				item.epcTransponderModel = EPCTransponderModel.getEpcTrasponderModel(item.tid,
-						epcTransponderModelsConfig);
+				item.epcTransponderModel = transponderModels.resolve(item.tid);
 
-				item.id = ByteBlock.byteArrayToHexString(caenTag.GetId());
+				// the hex id is only produced if an observation reports the tag
+				item.key = EpcKey.of(tagId);
 				item.readPoint = sourceName;
 
 				inventory.add(item);
 			}
 
-			try {
-				Thread.sleep(50);
-			} catch (InterruptedException e) {
-			}
-
-			notify();
+			metrics.recordRound(sourceName, System.nanoTime() - start, inventoryTags.length);
 
 			return inventory;
 
 		} catch (CAENRFIDException e) {
 
+			metrics.recordException(sourceName, e);
+
 			isConnected = false;
+			reconnectSupervisor.requestReconnect();
 
 			throw new HardwareException("getInventory: " + e.getMessage(), e);
 
-		} finally {
+		} catch (InterruptedException e) {
 
-			loopUntilReconnect();
+			Thread.currentThread().interrupt();
+
+			throw new HardwareException("getInventory: Interrupted while waiting for the next round", e);
 		}
 	}
 
 	/**
-	 * Help to manage the event of a physical reader desconnection tries to
-	 * reconnect to all serial ports until the reader is plugged in again
+	 * Ports to try when the reader is lost: the last port the reader was
+	 * connected to, then every other serial port, in case the reader is
+	 * plugged in again on a different one
+	 * 
+	 * @return candidate serial ports
 	 */
-	private void loopUntilReconnect() {
+	private String[] getReconnectPorts() {
+
+		List<String> ports = new Vector<String>();
+
+		if (comPort != null) {
+			ports.add(comPort);
+		}
 
 		@SuppressWarnings("unchecked")
 		Enumeration<CommPortIdentifier> portEnum = CommPortIdentifier.getPortIdentifiers();
 
-		while (portEnum.hasMoreElements() && !isConnected) {
+		while (portEnum.hasMoreElements()) {
 			CommPortIdentifier portIdentifier = portEnum.nextElement();
 
-			if (portIdentifier.getPortType() != CommPortIdentifier.PORT_SERIAL) {
-				continue;
-			}
-
-			log.debug("loopUntilReconnect: trying to connect to port, " + portIdentifier.getName());
-
-			try {
-				initReader(portIdentifier.getName());
-
-			} catch (HardwareException e) {
+			if (portIdentifier.getPortType() == CommPortIdentifier.PORT_SERIAL
+					&& !portIdentifier.getName().equals(comPort)) {
+				ports.add(portIdentifier.getName());
 			}
 		}
+
+		return ports.toArray(new String[ports.size()]);
 	}
 
 	/*
@@ -511,7 +807,7 @@ public class CaenUSBController implements CaenController {
 	 */
 	public boolean isAsynchronousIdentifyRunning() throws HardwareException, UnsupportedOperationException {
 
-		throw new UnsupportedOperationException("isAsynchronousIdentifyRunning: Unsupported method");
+		return asynchronousIdentifier.isRunning();
 	}
 
 	/*
@@ -565,7 +861,7 @@ public class CaenUSBController implements CaenController {
 	public void removeAsynchronousIdentifyListener(AsynchronousIdentifyListener listener) throws HardwareException,
 			UnsupportedOperationException {
 
-		throw new UnsupportedOperationException("removeAsynchronousIdentifyListener: Unsupported method");
+		asynchronousIdentifier.removeListener(listener);
 	}
 
 	/*
@@ -576,9 +872,44 @@ public class CaenUSBController implements CaenController {
 	public void reset() throws HardwareException {
 
 		log.debug("reset: Caen HAL is going to reset");
+		tagDescriptors.invalidate(config.getString("idTypesConfig"));
 		initReader(comPort);
 	}
 
+	/* (non-Javadoc)
+	 * @see org.fosstrak.hal.impl.caen.CaenController#shutdown()
+	 */
+	public void shutdown() {
+
+		log.info("shutdown: Caen HAL is going to shut down");
+
+		// no connection to the reader is made from now on
+		shutdown = true;
+
+		asynchronousIdentifier.stop();
+
+		if (!reconnectSupervisor.shutdown(SHUTDOWN_TIMEOUT)) {
+			log.warn("shutdown: Reconnect thread still running after " + SHUTDOWN_TIMEOUT
+					+ " ms, waiting for its connection attempt");
+		}
+
+		// the platform MBean server would keep the controller reachable
+		monitor.unregister();
+
+		// waits for a connection in progress
+		synchronized (connectLock) {
+
+			try {
+				disconnectReader();
+
+			} catch (CAENRFIDException e) {
+				log.warn("shutdown: Error disconnecting the reader: " + e.getMessage());
+			}
+
+			isConnected = false;
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -628,7 +959,16 @@ public class CaenUSBController implements CaenController {
 	public void startAsynchronousIdentify(String[] readPointNames, Trigger trigger) throws ReadPointNotFoundException,
 			HardwareException, UnsupportedOperationException {
 
-		throw new UnsupportedOperationException("startAsynchronousIdentify: Unsupported method");
+		long interval = AsynchronousIdentifier.getInterval(trigger);
+
+		for (String readPointName : readPointNames) {
+			if (!logicalSources.containsKey(readPointName)) {
+				throw new ReadPointNotFoundException("startAsynchronousIdentify: Unknown read point " + readPointName);
+			}
+		}
+
+		log.info("Starting asynchronous identify on " + Arrays.toString(readPointNames));
+		asynchronousIdentifier.start(readPointNames, interval);
 	}
 
 	/*
@@ -656,7 +996,8 @@ public class CaenUSBController implements CaenController {
 	 */
 	public void stopAsynchronousIdentify() throws HardwareException, UnsupportedOperationException {
 
-		throw new UnsupportedOperationException("stopAsynchronousIdentify: Unsupported method");
+		log.info("Stopping asynchronous identify");
+		asynchronousIdentifier.stop();
 	}
 
 	/*
@@ -665,8 +1006,7 @@ public class CaenUSBController implements CaenController {
 	 * @see org.fosstrak.hal.HardwareAbstraction#supportsAsynchronousIdentify()
 	 */
 	public boolean supportsAsynchronousIdentify() {
-		// TODO Auto-generated method stub
-		return false;
+		return true;
 	}
 
 	/*
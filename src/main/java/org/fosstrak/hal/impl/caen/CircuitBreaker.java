@@ -0,0 +1,223 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Circuit breaker for the calls to a remote reader. After failureThreshold
+ * consecutive failures the breaker opens and calls are rejected immediately
+ * instead of waiting for the network to fail them. While open, a background
+ * thread probes the reader every cool-down; the breaker is half-open during a
+ * probe and closes again when the probe succeeds.
+ *
+ * @author David Figueroa
+ */
+class CircuitBreaker implements Runnable {
+
+	static Logger log = Logger.getLogger(CircuitBreaker.class);
+
+	enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	/**
+	 * Cheap call telling whether the reader answers again
+	 */
+	interface Probe {
+
+		void probe() throws Exception;
+	}
+
+	private final String name;
+	private final String readPointName;
+	private final Probe probe;
+	private final InventoryMetrics metrics;
+
+	private volatile int failureThreshold = 5;
+	private volatile long coolDown = 5000;
+
+	private volatile State state = State.CLOSED;
+
+	private int failures = 0;
+
+	/**
+	 * The probing thread, null while closed
+	 */
+	private Thread thread;
+
+	/**
+	 * @param name
+	 *            name used for the thread, usually the HAL name
+	 * @param readPointName
+	 *            read point of the reader, for the metrics
+	 * @param probe
+	 *            the probe run while open
+	 * @param metrics
+	 *            told about the state changes
+	 */
+	public CircuitBreaker(String name, String readPointName, Probe probe, InventoryMetrics metrics) {
+		this.name = name;
+		this.readPointName = readPointName;
+		this.probe = probe;
+		this.metrics = metrics;
+
+		metrics.initBreakerState(readPointName, state.name());
+	}
+
+	/**
+	 * @param failureThreshold
+	 *            consecutive failures opening the breaker, 0 to never open it
+	 * @param coolDown
+	 *            milliseconds between two probes while open
+	 */
+	public void configure(int failureThreshold, long coolDown) {
+		this.failureThreshold = Math.max(0, failureThreshold);
+		this.coolDown = Math.max(1, coolDown);
+	}
+
+	/**
+	 * @return true if a call may go to the reader, false if it must be
+	 *         rejected
+	 */
+	public boolean allowRequest() {
+		return state == State.CLOSED;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * Records a call answered by the reader
+	 */
+	public synchronized void success() {
+		failures = 0;
+	}
+
+	/**
+	 * Records a call the reader did not answer, opens the breaker at the
+	 * threshold
+	 */
+	public synchronized void failure() {
+
+		failures++;
+
+		if (failureThreshold > 0 && failures >= failureThreshold) {
+			open("failed " + failures + " consecutive calls");
+		}
+	}
+
+	/**
+	 * Opens the breaker at once, for instance when the reader does not answer
+	 * at startup, unless it is already open
+	 * 
+	 * @param reason
+	 *            for the log
+	 */
+	public synchronized void open(String reason) {
+
+		if (state != State.CLOSED || failureThreshold == 0) {
+			return;
+		}
+
+		log.warn("open: " + name + " " + reason + ", rejecting calls for " + coolDown + " ms");
+
+		setState(State.OPEN);
+
+		thread = new Thread(this, name + "-breaker");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Closes the breaker, for instance after the reader was reconnected
+	 */
+	public synchronized void reset() {
+
+		if (thread != null) {
+			thread.interrupt();
+			thread = null;
+		}
+
+		failures = 0;
+
+		if (state != State.CLOSED) {
+			setState(State.CLOSED);
+		}
+	}
+
+	/**
+	 * Stops probing, the breaker is no longer used
+	 */
+	public synchronized void shutdown() {
+
+		if (thread != null) {
+			thread.interrupt();
+			thread = null;
+		}
+	}
+
+	public void run() {
+
+		while (!Thread.currentThread().isInterrupted()) {
+
+			try {
+				Thread.sleep(coolDown);
+
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			if (!halfOpen()) {
+				return;
+			}
+
+			try {
+				probe.probe();
+				closed();
+				return;
+
+			} catch (Exception e) {
+				log.debug("run: " + name + " probe failed: " + e.getMessage());
+				reopened();
+			}
+		}
+	}
+
+	private synchronized boolean halfOpen() {
+
+		if (thread != Thread.currentThread()) {
+			return false;
+		}
+
+		setState(State.HALF_OPEN);
+		return true;
+	}
+
+	private synchronized void closed() {
+
+		if (thread != Thread.currentThread()) {
+			return;
+		}
+
+		log.info("run: " + name + " answers again, accepting calls");
+
+		thread = null;
+		failures = 0;
+		setState(State.CLOSED);
+	}
+
+	private synchronized void reopened() {
+
+		if (thread == Thread.currentThread()) {
+			setState(State.OPEN);
+		}
+	}
+
+	private void setState(State state) {
+		this.state = state;
+		metrics.recordBreakerState(readPointName, state.name());
+	}
+}
@@ -0,0 +1,34 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import org.fosstrak.hal.Observation;
+
+/**
+ * Observation of a read point in delta identify mode. The ids are the tags
+ * that appeared since the previous identify of the read point; the tags that
+ * are gone since then are reported apart, so that every id stays an EPC in
+ * hex and consumers unaware of the delta mode only see new tags.
+ *
+ * @author David Figueroa
+ */
+public class DeltaObservation extends Observation {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String[] NONE = new String[0];
+
+	private String[] goneIds = NONE;
+
+	/**
+	 * @return ids of the tags no longer seen by the read point, never null
+	 */
+	public String[] getGoneIds() {
+		return goneIds;
+	}
+
+	public void setGoneIds(String[] goneIds) {
+		this.goneIds = goneIds == null ? NONE : goneIds;
+	}
+}
@@ -0,0 +1,21 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import org.fosstrak.hal.transponder.InventoryItem;
+
+/**
+ * Inventory item carrying the internal key of the tag. The hex id is left
+ * unset by the controllers that do not receive it as such, it is produced
+ * from the key only when an observation reports the tag.
+ *
+ * @author David Figueroa
+ */
+class EpcInventoryItem extends InventoryItem {
+
+	/**
+	 * Key of the tag id
+	 */
+	EpcKey key;
+}
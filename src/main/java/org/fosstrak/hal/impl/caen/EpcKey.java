@@ -0,0 +1,279 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+import org.fosstrak.hal.util.ByteBlock;
+
+/**
+ * Internal key of a tag id. Ids of up to 16 bytes (96 and 128 bit EPCs) are
+ * packed into two longs, longer ids keep a copy of their bytes. The hex
+ * representation reported in observations is only produced when first asked
+ * for, and then kept.
+ *
+ * Ids that are not hex are keyed by their UTF-8 characters, and marked so
+ * that they never equal the key of a hex id with the same bytes.
+ *
+ * @author David Figueroa
+ */
+final class EpcKey {
+
+	/**
+	 * Longest id packed into the two longs, in bytes
+	 */
+	private static final int PACKED_LENGTH = 16;
+
+	private final long high;
+	private final long low;
+	private final int length;
+
+	/**
+	 * Bytes of ids longer than PACKED_LENGTH, null otherwise
+	 */
+	private final byte[] bytes;
+
+	/**
+	 * True if the bytes are the characters of an id that is not hex
+	 */
+	private final boolean characters;
+
+	private final int hash;
+
+	/**
+	 * Hex representation, built lazily
+	 */
+	private String hex;
+
+	private EpcKey(long high, long low, int length, byte[] bytes, String hex) {
+		this(high, low, length, bytes, hex, false);
+	}
+
+	private EpcKey(long high, long low, int length, byte[] bytes, String hex, boolean characters) {
+		this.high = high;
+		this.low = low;
+		this.length = length;
+		this.bytes = bytes;
+		this.hex = hex;
+		this.characters = characters;
+
+		int h = bytes == null ? mix(high ^ Long.rotateLeft(low, 29) ^ length) : Arrays.hashCode(bytes);
+		this.hash = characters ? ~h : h;
+	}
+
+	/**
+	 * Key of the given id
+	 *
+	 * @param id
+	 *            tag id as returned by the reader, not kept
+	 */
+	public static EpcKey of(byte[] id) {
+		return of(id, 0, id.length);
+	}
+
+	/**
+	 * Key of an id given as hex string, as returned by the reader proxy. The
+	 * string itself is kept as hex representation.
+	 *
+	 * Ids that are not valid hex are keyed by their UTF-8 characters, see
+	 * {@link #ofCharacters(byte[], int, int)}, and still reported as given.
+	 *
+	 * @param hex
+	 *            tag id in hex
+	 */
+	public static EpcKey parse(String hex) {
+
+		try {
+			return parseHex(hex);
+
+		} catch (NumberFormatException e) {
+			try {
+				byte[] id = hex.getBytes("UTF-8");
+				return new EpcKey(0, 0, id.length, id, hex, true);
+
+			} catch (UnsupportedEncodingException uee) {
+				// every JVM supports UTF-8
+				throw new IllegalStateException(uee.toString());
+			}
+		}
+	}
+
+	private static EpcKey parseHex(String hex) {
+
+		int length = (hex.length() + 1) / 2;
+
+		if (length > PACKED_LENGTH) {
+			byte[] id = new byte[length];
+
+			for (int i = 0; i < length; i++) {
+				id[i] = (byte) nibbles(hex, hex.length() - 2 * (length - i));
+			}
+			return new EpcKey(0, 0, length, id, hex);
+		}
+
+		long high = 0;
+		long low = 0;
+
+		for (int i = 0; i < length; i++) {
+			high = (high << 8) | (low >>> 56);
+			low = (low << 8) | nibbles(hex, hex.length() - 2 * (length - i));
+		}
+
+		return new EpcKey(high, low, length, null, hex);
+	}
+
+	/**
+	 * Key of a slice of a buffer
+	 *
+	 * @param buffer
+	 * @param offset
+	 *            first byte of the id
+	 * @param length
+	 *            bytes of the id
+	 */
+	public static EpcKey of(byte[] buffer, int offset, int length) {
+
+		if (length > PACKED_LENGTH) {
+			byte[] id = new byte[length];
+			System.arraycopy(buffer, offset, id, 0, length);
+			return new EpcKey(0, 0, length, id, null);
+		}
+
+		long high = 0;
+		long low = 0;
+
+		for (int i = offset; i < offset + length; i++) {
+			high = (high << 8) | (low >>> 56);
+			low = (low << 8) | (buffer[i] & 0xFF);
+		}
+
+		return new EpcKey(high, low, length, null, null);
+	}
+
+	/**
+	 * Key of an id that is not hex, given as its UTF-8 characters. The key
+	 * equals the one parsed from the id, and no key of a hex id.
+	 *
+	 * @param buffer
+	 * @param offset
+	 *            first byte of the characters
+	 * @param length
+	 *            bytes of the characters
+	 */
+	public static EpcKey ofCharacters(byte[] buffer, int offset, int length) {
+
+		byte[] id = new byte[length];
+		System.arraycopy(buffer, offset, id, 0, length);
+
+		return new EpcKey(0, 0, length, id, null, true);
+	}
+
+	/**
+	 * Hex representations of the given keys
+	 */
+	public static String[] toHexStrings(EpcKey[] keys) {
+
+		String[] ids = new String[keys.length];
+
+		for (int i = 0; i < keys.length; i++) {
+			ids[i] = keys[i].toString();
+		}
+
+		return ids;
+	}
+
+	/**
+	 * @return length of the id in bytes
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * @return a new copy of the id bytes, the UTF-8 characters of an id that
+	 *         is not hex
+	 */
+	public byte[] toBytes() {
+
+		if (bytes != null) {
+			return bytes.clone();
+		}
+
+		byte[] id = new byte[length];
+		long h = high;
+		long l = low;
+
+		for (int i = length - 1; i >= 0; i--) {
+			id[i] = (byte) l;
+			l = (l >>> 8) | (h << 56);
+			h >>>= 8;
+		}
+
+		return id;
+	}
+
+	/**
+	 * Hex representation of the id, as reported in observations, or the id
+	 * itself if it is not hex
+	 */
+	public String toString() {
+
+		String s = hex;
+
+		if (s == null) {
+			if (characters) {
+				try {
+					s = new String(bytes, "UTF-8");
+
+				} catch (UnsupportedEncodingException e) {
+					// every JVM supports UTF-8
+					throw new IllegalStateException(e.toString());
+				}
+			} else {
+				s = ByteBlock.byteArrayToHexString(toBytes());
+			}
+			hex = s;
+		}
+
+		return s;
+	}
+
+	public int hashCode() {
+		return hash;
+	}
+
+	public boolean equals(Object obj) {
+
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof EpcKey)) {
+			return false;
+		}
+
+		EpcKey other = (EpcKey) obj;
+
+		return hash == other.hash && length == other.length && high == other.high && low == other.low
+				&& characters == other.characters && Arrays.equals(bytes, other.bytes);
+	}
+
+	private static int nibbles(String hex, int index) {
+		int h = index < 0 ? 0 : Character.digit(hex.charAt(index), 16);
+		int l = Character.digit(hex.charAt(index + 1), 16);
+
+		if (h < 0 || l < 0) {
+			throw new NumberFormatException("Invalid hex id: " + hex);
+		}
+
+		return (h << 4) | l;
+	}
+
+	private static int mix(long v) {
+		v ^= (v >>> 33);
+		v *= 0xff51afd7ed558ccdL;
+		v ^= (v >>> 33);
+		return (int) v;
+	}
+}
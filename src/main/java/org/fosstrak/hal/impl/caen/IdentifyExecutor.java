@@ -0,0 +1,148 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.fosstrak.hal.HardwareException;
+import org.fosstrak.hal.Observation;
+
+/**
+ * Runs the identify of several read points concurrently. Read points are
+ * grouped by the physical reader (or port) they belong to: read points of the
+ * same reader are identified one after the other, different readers are
+ * identified in parallel, bounded by the size of the thread pool.
+ * <p>
+ * Only used by {@link CaenTCPController}, whose read points may belong to
+ * several remote readers. The read points of {@link CaenUSBController} all
+ * share the single reader of its port, so there is nothing to run in parallel.
+ *
+ * @author David Figueroa
+ */
+class IdentifyExecutor {
+
+	/**
+	 * Identifies a single read point
+	 */
+	interface ReadPointIdentifier {
+
+		Observation identify(String readPointName) throws HardwareException;
+	}
+
+	private final ExecutorService executor;
+
+	/**
+	 * @param name
+	 *            name used for the worker threads, usually the HAL name
+	 * @param parallelism
+	 *            maximum number of readers identified at the same time
+	 */
+	public IdentifyExecutor(final String name, int parallelism) {
+
+		executor = Executors.newFixedThreadPool(Math.max(1, parallelism), new ThreadFactory() {
+
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, name + "-identify-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Identifies all the read points, keeping the order of readPointNames in
+	 * the returned observations.
+	 *
+	 * @param readPointNames
+	 *            read points to identify
+	 * @param readers
+	 *            physical reader of each read point
+	 * @param identifier
+	 *            identifies one read point
+	 * @return one observation per read point
+	 * @throws HardwareException
+	 *             the first error raised by any of the read points
+	 */
+	public Observation[] identify(final String[] readPointNames, String[] readers,
+			final ReadPointIdentifier identifier) throws HardwareException {
+
+		final Observation[] observations = new Observation[readPointNames.length];
+
+		// read point indexes grouped by physical reader
+		Map<String, List<Integer>> groups = new LinkedHashMap<String, List<Integer>>();
+
+		for (int i = 0; i < readPointNames.length; i++) {
+			List<Integer> group = groups.get(readers[i]);
+
+			if (group == null) {
+				group = new ArrayList<Integer>();
+				groups.put(readers[i], group);
+			}
+			group.add(i);
+		}
+
+		List<Future<Object>> pending = new ArrayList<Future<Object>>(groups.size());
+
+		for (final List<Integer> group : groups.values()) {
+
+			pending.add(executor.submit(new Callable<Object>() {
+
+				public Object call() throws HardwareException {
+					for (int i : group) {
+						observations[i] = identifier.identify(readPointNames[i]);
+					}
+					return null;
+				}
+			}));
+		}
+
+		HardwareException failure = null;
+
+		for (Future<Object> future : pending) {
+			try {
+				future.get();
+
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new HardwareException("identify: Interrupted while waiting for read points", e);
+
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					Throwable cause = e.getCause();
+
+					if (cause instanceof HardwareException) {
+						failure = (HardwareException) cause;
+					} else {
+						failure = new HardwareException("identify: " + cause.getMessage(), cause);
+					}
+				}
+			}
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+
+		return observations;
+	}
+
+	/**
+	 * Stops the worker threads
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,73 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import org.fosstrak.hal.Observation;
+import org.fosstrak.hal.TagDescriptor;
+
+/**
+ * Identified tags of one inventory round of a read point, after the presence
+ * filter and the delta. Computed once per round and shared by every caller
+ * that joined the round, each of them reporting it in an observation of its
+ * own.
+ *
+ * @author David Figueroa
+ */
+class IdentifyResult {
+
+	/**
+	 * Hex ids of the tags, or of the tags that appeared in delta mode
+	 */
+	final String[] ids;
+
+	/**
+	 * Hex ids of the tags that are gone, null unless in delta mode
+	 */
+	final String[] goneIds;
+
+	/**
+	 * Descriptors of the tags, null if not every tag has one
+	 */
+	final TagDescriptor[] descriptors;
+
+	/**
+	 * Time the inventory completed
+	 */
+	final long timestamp;
+
+	IdentifyResult(String[] ids, String[] goneIds, TagDescriptor[] descriptors, long timestamp) {
+		this.ids = ids;
+		this.goneIds = goneIds;
+		this.descriptors = descriptors;
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * @return a new observation of the read point reporting the result
+	 */
+	Observation toObservation(String halName, String readPointName) {
+
+		Observation observation;
+
+		if (goneIds != null) {
+			// the tags that are gone are reported apart from the ids
+			DeltaObservation deltaObservation = new DeltaObservation();
+			deltaObservation.setGoneIds(goneIds);
+			observation = deltaObservation;
+		} else {
+			observation = new Observation();
+		}
+
+		observation.setHalName(halName);
+		observation.setReadPointName(readPointName);
+
+		if (descriptors != null) {
+			observation.setTagDescriptors(descriptors);
+		}
+		observation.setIds(ids);
+		observation.setTimestamp(timestamp);
+
+		return observation;
+	}
+}
@@ -0,0 +1,103 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.fosstrak.hal.HardwareException;
+
+/**
+ * Single-flight for the inventory rounds of a controller: a caller asking
+ * for the inventory of a source while a round of that source is in progress
+ * waits for that round and shares its result instead of queuing for a round
+ * of its own. The result of a shared round must not be modified.
+ *
+ * @param <T>
+ *            the result of a round
+ * @author David Figueroa
+ */
+class InventoryCoalescer<T> {
+
+	/**
+	 * Runs one inventory round
+	 */
+	interface Round<T> {
+
+		T run(String sourceName) throws HardwareException;
+	}
+
+	private final Round<T> round;
+	private final InventoryMetrics metrics;
+
+	private final ConcurrentMap<String, FutureTask<T>> inFlight = new ConcurrentHashMap<String, FutureTask<T>>();
+
+	/**
+	 * @param round
+	 *            runs the rounds
+	 * @param metrics
+	 *            counts the coalesced calls
+	 */
+	public InventoryCoalescer(Round<T> round, InventoryMetrics metrics) {
+		this.round = round;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return the result of a round of the source, started by this call or by
+	 *         a concurrent one
+	 * @throws HardwareException
+	 *             the failure of the round
+	 */
+	public T get(final String sourceName) throws HardwareException {
+
+		FutureTask<T> task = new FutureTask<T>(
+				new Callable<T>() {
+
+					public T call() throws HardwareException {
+						return round.run(sourceName);
+					}
+				});
+
+		FutureTask<T> running = inFlight.putIfAbsent(sourceName, task);
+
+		if (running == null) {
+			try {
+				task.run();
+
+			} finally {
+				inFlight.remove(sourceName, task);
+			}
+			running = task;
+
+		} else {
+			metrics.recordCoalesced(sourceName);
+		}
+
+		try {
+			return running.get();
+
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof HardwareException) {
+				throw (HardwareException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new HardwareException("getInventory: " + cause.getMessage(), cause);
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new HardwareException("getInventory: Interrupted while waiting for a shared round", e);
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the previous inventory of every read point and reduces each new
+ * inventory to the tags that appeared and the tags that are gone since then.
+ *
+ * @author David Figueroa
+ */
+class InventoryDelta {
+
+	/**
+	 * Changes of a read point since its previous inventory
+	 */
+	static class Changes {
+
+		/**
+		 * Hex ids of the tags that appeared
+		 */
+		final String[] appeared;
+
+		/**
+		 * Hex ids of the tags that are gone
+		 */
+		final String[] gone;
+
+		Changes(String[] appeared, String[] gone) {
+			this.appeared = appeared;
+			this.gone = gone;
+		}
+	}
+
+	private final Map<String, TagSet> inventories = new HashMap<String, TagSet>();
+
+	/**
+	 * Reduces the ids seen by a read point to the changes since its previous
+	 * inventory.
+	 *
+	 * @param readPointName
+	 * @param ids
+	 *            all the tags seen in the current inventory
+	 * @return the ids that appeared and the ids that are gone
+	 */
+	public synchronized Changes update(String readPointName, EpcKey[] ids) {
+
+		TagSet previous = inventories.get(readPointName);
+
+		if (previous == null) {
+			previous = new TagSet();
+			inventories.put(readPointName, previous);
+		}
+
+		List<EpcKey> appeared = new ArrayList<EpcKey>();
+		List<EpcKey> gone = new ArrayList<EpcKey>();
+
+		previous.update(ids, appeared, gone);
+
+		// hex ids are only produced for the changes
+		return new Changes(EpcKey.toHexStrings(appeared.toArray(new EpcKey[appeared.size()])),
+				EpcKey.toHexStrings(gone.toArray(new EpcKey[gone.size()])));
+	}
+
+	/**
+	 * Forgets the previous inventories, the next inventory of every read point
+	 * is reported in full
+	 */
+	public synchronized void clear() {
+		inventories.clear();
+	}
+}
@@ -0,0 +1,566 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Inventory metrics of a controller: per read point latency histogram of the
+ * inventory rounds, rounds, tags and tag rate, plus the failed rounds counted
+ * by cause. Recording is lock free so it can stay on in production.
+ *
+ * Snapshots are read by name, see {@link #getParameter(String)}:
+ *
+ * <pre>
+ * metrics.&lt;readPoint&gt;.rounds            inventory rounds
+ * metrics.&lt;readPoint&gt;.tags              tags seen, in total
+ * metrics.&lt;readPoint&gt;.lastRoundTags     tags seen in the last round
+ * metrics.&lt;readPoint&gt;.tagsPerRound      mean tags per round
+ * metrics.&lt;readPoint&gt;.tagsPerSecond     tags seen in the last full second
+ * metrics.&lt;readPoint&gt;.roundsPerSecond   rounds run in the last full second
+ * metrics.&lt;readPoint&gt;.errors            failed rounds
+ * metrics.&lt;readPoint&gt;.coalesced         calls that shared a round in progress
+ * metrics.&lt;readPoint&gt;.rejected          calls rejected by the open circuit breaker
+ * metrics.&lt;readPoint&gt;.breaker.state     state of the circuit breaker of the
+ *                                     read point, if it has one
+ * metrics.&lt;readPoint&gt;.latency.mean      round latency in microseconds, also
+ *                                     .max, .p50, .p90, .p99 and .p999
+ * metrics.coalesced                   calls that shared a round, all read points
+ * metrics.reconnects                  connections to the reader after the first
+ * metrics.exceptions                  failed rounds, all read points
+ * metrics.exceptions.&lt;cause&gt;          failed rounds by cause
+ * metrics.breaker.state               CLOSED, OPEN or HALF_OPEN, the worst
+ *                                     among the read points, only for
+ *                                     controllers with circuit breakers
+ * metrics.breaker.opened              times the breaker opened
+ * metrics.breaker.transitions         state changes of the breaker
+ * metrics.breaker.rejected            calls rejected, all read points
+ * </pre>
+ *
+ * @author David Figueroa
+ */
+class InventoryMetrics {
+
+	static final String PREFIX = "metrics.";
+
+	private static final String EXCEPTIONS = "exceptions";
+	private static final String RECONNECTS = "reconnects";
+	private static final String COALESCED = "coalesced";
+	private static final String BREAKER_STATE = "breaker.state";
+	private static final String BREAKER_OPENED = "breaker.opened";
+	private static final String BREAKER_TRANSITIONS = "breaker.transitions";
+	private static final String BREAKER_REJECTED = "breaker.rejected";
+
+	private static final String[] READ_POINT_METRICS = { "rounds", "tags", "lastRoundTags", "tagsPerRound",
+			"tagsPerSecond", "roundsPerSecond", "errors", "coalesced", "rejected", "latency.mean", "latency.max", "latency.p50", "latency.p90", "latency.p99",
+			"latency.p999" };
+
+	private final ConcurrentMap<String, ReadPointMetrics> readPoints = new ConcurrentHashMap<String, ReadPointMetrics>();
+	private final ConcurrentMap<String, AtomicLong> exceptions = new ConcurrentHashMap<String, AtomicLong>();
+	private final AtomicLong exceptionCount = new AtomicLong();
+	private final AtomicLong reconnects = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong breakerOpened = new AtomicLong();
+	private final AtomicLong breakerTransitions = new AtomicLong();
+	private final AtomicLong breakerRejected = new AtomicLong();
+
+	/**
+	 * Set once a circuit breaker reported its state
+	 */
+	private volatile boolean breakers = false;
+
+	/**
+	 * Tags seen in the last round of any read point
+	 */
+	private volatile int lastRoundTags = 0;
+
+	/**
+	 * Records a successful inventory round
+	 *
+	 * @param readPointName
+	 * @param nanos
+	 *            duration of the round
+	 * @param tags
+	 *            tags seen in the round
+	 */
+	public void recordRound(String readPointName, long nanos, int tags) {
+		get(readPointName).record(nanos / 1000, tags, System.nanoTime());
+		lastRoundTags = tags;
+	}
+
+	/**
+	 * Records a failed inventory round, counted by the root cause of the
+	 * exception
+	 *
+	 * @param readPointName
+	 * @param e
+	 */
+	public void recordException(String readPointName, Throwable e) {
+
+		get(readPointName).errors.incrementAndGet();
+		exceptionCount.incrementAndGet();
+
+		Throwable cause = e;
+
+		while (cause.getCause() != null && cause.getCause() != cause) {
+			cause = cause.getCause();
+		}
+
+		String name = cause.getClass().getSimpleName();
+		AtomicLong counter = exceptions.get(name);
+
+		if (counter == null) {
+			AtomicLong created = new AtomicLong();
+			counter = exceptions.putIfAbsent(name, created);
+
+			if (counter == null) {
+				counter = created;
+			}
+		}
+
+		counter.incrementAndGet();
+	}
+
+	/**
+	 * Records a call that shared the round in progress of its read point
+	 * instead of running its own
+	 */
+	public void recordCoalesced(String readPointName) {
+		get(readPointName).coalesced.incrementAndGet();
+		coalesced.incrementAndGet();
+	}
+
+	/**
+	 * Records a state change of the circuit breaker of a read point
+	 * 
+	 * @param state
+	 *            the new state, OPEN when it opens
+	 */
+	public void recordBreakerState(String readPointName, String state) {
+		get(readPointName).breakerState = state;
+		breakers = true;
+		breakerTransitions.incrementAndGet();
+
+		if ("OPEN".equals(state)) {
+			breakerOpened.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Records the state of a new circuit breaker of a read point, replacing
+	 * the state of the previous one. Not counted as a transition
+	 */
+	public void initBreakerState(String readPointName, String state) {
+		get(readPointName).breakerState = state;
+		breakers = true;
+	}
+
+	/**
+	 * Forgets the circuit breaker of a read point no longer configured
+	 */
+	public void removeBreaker(String readPointName) {
+
+		ReadPointMetrics metrics = readPoints.get(readPointName);
+
+		if (metrics != null) {
+			metrics.breakerState = null;
+		}
+	}
+
+	/**
+	 * Records a call rejected by the open circuit breaker
+	 */
+	public void recordRejected(String readPointName) {
+		get(readPointName).rejected.incrementAndGet();
+		breakerRejected.incrementAndGet();
+	}
+
+	/**
+	 * Records a connection to the reader after the first one
+	 */
+	public void recordReconnect() {
+		reconnects.incrementAndGet();
+	}
+
+	/**
+	 * @return the latency histogram of a read point, null if it never ran an
+	 *         inventory
+	 */
+	public LatencyHistogram getLatency(String readPointName) {
+		ReadPointMetrics metrics = readPoints.get(readPointName);
+		return metrics == null ? null : metrics.latency;
+	}
+
+	/**
+	 * @return tags seen in the last round of a read point, 0 if none
+	 */
+	public int getLastRoundTags(String readPointName) {
+		ReadPointMetrics metrics = readPoints.get(readPointName);
+		return metrics == null ? 0 : metrics.lastRoundTags;
+	}
+
+	/**
+	 * @return tags seen in the last round of any read point
+	 */
+	public int getLastRoundTags() {
+		return lastRoundTags;
+	}
+
+	/**
+	 * @return tags seen by a read point in the last full second
+	 */
+	public long getTagsPerSecond(String readPointName) {
+		ReadPointMetrics metrics = readPoints.get(readPointName);
+		return metrics == null ? 0 : metrics.getTagsPerSecond(System.nanoTime());
+	}
+
+	/**
+	 * @return tags seen by all the read points in the last full second
+	 */
+	public long getTagsPerSecond() {
+
+		long now = System.nanoTime();
+		long total = 0;
+
+		for (ReadPointMetrics metrics : readPoints.values()) {
+			total += metrics.getTagsPerSecond(now);
+		}
+
+		return total;
+	}
+
+	/**
+	 * @return rounds run by all the read points in the last full second
+	 */
+	public long getRoundsPerSecond() {
+
+		long now = System.nanoTime();
+		long total = 0;
+
+		for (ReadPointMetrics metrics : readPoints.values()) {
+			total += metrics.getRoundsPerSecond(now);
+		}
+
+		return total;
+	}
+
+	/**
+	 * @return rounds run by all the read points
+	 */
+	public long getRounds() {
+
+		long total = 0;
+
+		for (ReadPointMetrics metrics : readPoints.values()) {
+			total += metrics.rounds.get();
+		}
+
+		return total;
+	}
+
+	/**
+	 * @return highest value at the given percentile among the read points,
+	 *         in microseconds
+	 */
+	public long getWorstValueAtPercentile(double percentile) {
+
+		long worst = 0;
+
+		for (ReadPointMetrics metrics : readPoints.values()) {
+			worst = Math.max(worst, metrics.latency.getValueAtPercentile(percentile));
+		}
+
+		return worst;
+	}
+
+	/**
+	 * @return calls that shared a round in progress
+	 */
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	/**
+	 * @return calls rejected by the circuit breaker
+	 */
+	public long getRejected() {
+		return breakerRejected.get();
+	}
+
+	/**
+	 * @return connections to the reader after the first one
+	 */
+	public long getReconnects() {
+		return reconnects.get();
+	}
+
+	/**
+	 * @return total failed rounds
+	 */
+	public long getExceptionCount() {
+		return exceptionCount.get();
+	}
+
+	/**
+	 * @return names of the metrics available so far
+	 */
+	public List<String> getParameterNames() {
+
+		List<String> names = new ArrayList<String>();
+
+		for (String readPointName : readPoints.keySet()) {
+			for (String metric : READ_POINT_METRICS) {
+				names.add(PREFIX + readPointName + "." + metric);
+			}
+
+			if (readPoints.get(readPointName).breakerState != null) {
+				names.add(PREFIX + readPointName + "." + BREAKER_STATE);
+			}
+		}
+
+		names.add(PREFIX + COALESCED);
+		names.add(PREFIX + RECONNECTS);
+		names.add(PREFIX + EXCEPTIONS);
+
+		for (String cause : exceptions.keySet()) {
+			names.add(PREFIX + EXCEPTIONS + "." + cause);
+		}
+
+		if (breakers) {
+			names.add(PREFIX + BREAKER_STATE);
+			names.add(PREFIX + BREAKER_OPENED);
+			names.add(PREFIX + BREAKER_TRANSITIONS);
+			names.add(PREFIX + BREAKER_REJECTED);
+		}
+
+		return names;
+	}
+
+	/**
+	 * @param name
+	 *            metric name, starting with "metrics."
+	 * @return the current value, null if the metric is unknown
+	 */
+	public String getParameter(String name) {
+
+		if (!name.startsWith(PREFIX)) {
+			return null;
+		}
+
+		String metric = name.substring(PREFIX.length());
+
+		if (COALESCED.equals(metric)) {
+			return String.valueOf(coalesced.get());
+		}
+
+		if (RECONNECTS.equals(metric)) {
+			return String.valueOf(reconnects.get());
+		}
+
+		if (BREAKER_STATE.equals(metric)) {
+			return breakers ? getWorstBreakerState() : null;
+		}
+
+		if (BREAKER_OPENED.equals(metric)) {
+			return String.valueOf(breakerOpened.get());
+		}
+
+		if (BREAKER_TRANSITIONS.equals(metric)) {
+			return String.valueOf(breakerTransitions.get());
+		}
+
+		if (BREAKER_REJECTED.equals(metric)) {
+			return String.valueOf(breakerRejected.get());
+		}
+
+		if (EXCEPTIONS.equals(metric)) {
+			return String.valueOf(exceptionCount.get());
+		}
+
+		if (metric.startsWith(EXCEPTIONS + ".")) {
+			AtomicLong counter = exceptions.get(metric.substring(EXCEPTIONS.length() + 1));
+			return String.valueOf(counter == null ? 0 : counter.get());
+		}
+
+		if (metric.endsWith("." + BREAKER_STATE)) {
+			ReadPointMetrics metrics = readPoints.get(metric.substring(0, metric.length() - BREAKER_STATE.length() - 1));
+
+			if (metrics != null) {
+				return metrics.breakerState;
+			}
+		}
+
+		// read point names may contain dots, match the metric from the end
+		for (String readPointMetric : READ_POINT_METRICS) {
+
+			if (metric.endsWith("." + readPointMetric)) {
+				String readPointName = metric.substring(0, metric.length() - readPointMetric.length() - 1);
+				ReadPointMetrics metrics = readPoints.get(readPointName);
+
+				if (metrics != null) {
+					return metrics.get(readPointMetric);
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return OPEN if a breaker is open, else HALF_OPEN if one is probing,
+	 *         else CLOSED
+	 */
+	private String getWorstBreakerState() {
+
+		String worst = "CLOSED";
+
+		for (ReadPointMetrics metrics : readPoints.values()) {
+
+			if ("OPEN".equals(metrics.breakerState)) {
+				return "OPEN";
+			}
+			if ("HALF_OPEN".equals(metrics.breakerState)) {
+				worst = "HALF_OPEN";
+			}
+		}
+
+		return worst;
+	}
+
+	private ReadPointMetrics get(String readPointName) {
+
+		ReadPointMetrics metrics = readPoints.get(readPointName);
+
+		if (metrics == null) {
+			ReadPointMetrics created = new ReadPointMetrics();
+			metrics = readPoints.putIfAbsent(readPointName, created);
+
+			if (metrics == null) {
+				metrics = created;
+			}
+		}
+
+		return metrics;
+	}
+
+	/**
+	 * Metrics of one read point
+	 */
+	private static class ReadPointMetrics {
+
+		private static final long SECOND = 1000000000L;
+
+		final LatencyHistogram latency = new LatencyHistogram();
+		final AtomicLong rounds = new AtomicLong();
+		final AtomicLong tags = new AtomicLong();
+		final AtomicLong errors = new AtomicLong();
+		final AtomicLong coalesced = new AtomicLong();
+		final AtomicLong rejected = new AtomicLong();
+
+		volatile int lastRoundTags = 0;
+
+		/**
+		 * State of the circuit breaker, null if the read point has none
+		 */
+		volatile String breakerState = null;
+
+		/**
+		 * Second the tags of currentSecondTags were seen in, in System.nanoTime
+		 * seconds
+		 */
+		final AtomicLong currentSecond = new AtomicLong(Long.MIN_VALUE);
+		final AtomicLong currentSecondTags = new AtomicLong();
+		final AtomicLong currentSecondRounds = new AtomicLong();
+		volatile long lastSecondTags = 0;
+		volatile long lastSecondRounds = 0;
+
+		void record(long micros, int roundTags, long now) {
+
+			latency.record(micros);
+			rounds.incrementAndGet();
+			tags.addAndGet(roundTags);
+			lastRoundTags = roundTags;
+
+			long second = now / SECOND;
+			long current = currentSecond.get();
+
+			if (second != current && currentSecond.compareAndSet(current, second)) {
+				// a round racing the roll over may land in either second
+				long previousTags = currentSecondTags.getAndSet(0);
+				long previousRounds = currentSecondRounds.getAndSet(0);
+				boolean consecutive = second == current + 1;
+				lastSecondTags = consecutive ? previousTags : 0;
+				lastSecondRounds = consecutive ? previousRounds : 0;
+			}
+
+			currentSecondTags.addAndGet(roundTags);
+			currentSecondRounds.incrementAndGet();
+		}
+
+		long getTagsPerSecond(long now) {
+			// no round in the last second, the rate has dropped to 0
+			return now / SECOND - currentSecond.get() > 1 ? 0 : lastSecondTags;
+		}
+
+		long getRoundsPerSecond(long now) {
+			return now / SECOND - currentSecond.get() > 1 ? 0 : lastSecondRounds;
+		}
+
+		String get(String metric) {
+
+			if ("rounds".equals(metric)) {
+				return String.valueOf(rounds.get());
+			}
+			if ("tags".equals(metric)) {
+				return String.valueOf(tags.get());
+			}
+			if ("lastRoundTags".equals(metric)) {
+				return String.valueOf(lastRoundTags);
+			}
+			if ("tagsPerRound".equals(metric)) {
+				long n = rounds.get();
+				return String.valueOf(n == 0 ? 0 : (double) tags.get() / n);
+			}
+			if ("tagsPerSecond".equals(metric)) {
+				return String.valueOf(getTagsPerSecond(System.nanoTime()));
+			}
+			if ("roundsPerSecond".equals(metric)) {
+				return String.valueOf(getRoundsPerSecond(System.nanoTime()));
+			}
+			if ("errors".equals(metric)) {
+				return String.valueOf(errors.get());
+			}
+			if ("coalesced".equals(metric)) {
+				return String.valueOf(coalesced.get());
+			}
+			if ("rejected".equals(metric)) {
+				return String.valueOf(rejected.get());
+			}
+			if ("latency.mean".equals(metric)) {
+				return String.valueOf(latency.getMean());
+			}
+			if ("latency.max".equals(metric)) {
+				return String.valueOf(latency.getMax());
+			}
+			if ("latency.p50".equals(metric)) {
+				return String.valueOf(latency.getValueAtPercentile(50));
+			}
+			if ("latency.p90".equals(metric)) {
+				return String.valueOf(latency.getValueAtPercentile(90));
+			}
+			if ("latency.p99".equals(metric)) {
+				return String.valueOf(latency.getValueAtPercentile(99));
+			}
+			if ("latency.p999".equals(metric)) {
+				return String.valueOf(latency.getValueAtPercentile(99.9));
+			}
+
+			return null;
+		}
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+/**
+ * Paces the inventory rounds of a reader. Rounds are issued back to back
+ * unless a minimum interval between the start of two rounds is configured
+ * (reader duty cycle, regulatory limits), in which case the next round waits
+ * only for the remainder of that interval.
+ *
+ * Also keeps track of the achieved round rate and of the gap between rounds.
+ *
+ * @author David Figueroa
+ */
+class InventoryPacer {
+
+	/**
+	 * Weight of the newest gap in the moving average
+	 */
+	private static final double ALPHA = 0.2;
+
+	private static final long NANOS_PER_MILLI = 1000000L;
+
+	/**
+	 * Minimum interval between the start of two rounds in milliseconds, 0
+	 * means no pacing
+	 */
+	private volatile long minInterval = 0;
+
+	/**
+	 * Start of the previous round, 0 until the first round
+	 */
+	private long lastRoundStart = 0;
+
+	/**
+	 * Last and average gap between the start of two rounds in nanoseconds
+	 */
+	private long lastGap = 0;
+	private double averageGap = 0;
+
+	/**
+	 * @param minInterval
+	 *            minimum interval between the start of two rounds in
+	 *            milliseconds, 0 to issue rounds back to back
+	 */
+	public void setMinInterval(long minInterval) {
+		this.minInterval = Math.max(0, minInterval);
+	}
+
+	public long getMinInterval() {
+		return minInterval;
+	}
+
+	/**
+	 * Called right before a round is issued, waits until the minimum interval
+	 * since the previous round has elapsed.
+	 *
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public synchronized void beginRound() throws InterruptedException {
+
+		long now = System.nanoTime();
+
+		if (lastRoundStart != 0) {
+			long wait = minInterval * NANOS_PER_MILLI - (now - lastRoundStart);
+
+			if (wait > 0) {
+				Thread.sleep(wait / NANOS_PER_MILLI, (int) (wait % NANOS_PER_MILLI));
+				now = System.nanoTime();
+			}
+
+			lastGap = now - lastRoundStart;
+			averageGap = averageGap == 0 ? lastGap : ALPHA * lastGap + (1 - ALPHA) * averageGap;
+		}
+
+		lastRoundStart = now;
+	}
+
+	/**
+	 * Achieved rounds per second, averaged over the latest rounds
+	 */
+	public synchronized double getRoundsPerSecond() {
+		return averageGap == 0 ? 0 : 1e9 / averageGap;
+	}
+
+	/**
+	 * Gap between the start of the last two rounds in milliseconds
+	 */
+	public synchronized double getInterRoundGap() {
+		return (double) lastGap / NANOS_PER_MILLI;
+	}
+}
@@ -0,0 +1,145 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in microseconds with log-linear buckets, in the
+ * manner of HdrHistogram: every power of two range is split in 16 linear
+ * sub-buckets, so percentiles are exact to about 6% whatever the magnitude.
+ * Recording only updates atomic counters and never locks or allocates;
+ * readers see a snapshot that may be slightly behind concurrent recordings.
+ *
+ * @author David Figueroa
+ */
+class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * Highest power of two tracked, 2^40 microseconds is about 12 days
+	 */
+	private static final int MAX_EXPONENT = 40;
+
+	private static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * @param micros
+	 *            the latency, negative values are recorded as 0
+	 */
+	public void record(long micros) {
+
+		long value = Math.max(0, micros);
+
+		counts.incrementAndGet(indexOf(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+
+		long current = max.get();
+
+		while (value > current && !max.compareAndSet(current, value)) {
+			current = max.get();
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return mean latency in microseconds, 0 if nothing was recorded
+	 */
+	public double getMean() {
+		long n = count.get();
+		return n == 0 ? 0 : (double) sum.get() / n;
+	}
+
+	/**
+	 * @return highest latency recorded in microseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @param percentile
+	 *            between 0 and 100
+	 * @return latency in microseconds under which the given percentage of the
+	 *         recordings fall, 0 if nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+
+		long total = 0;
+		long[] snapshot = new long[BUCKETS];
+
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+
+		if (total == 0) {
+			return 0;
+		}
+
+		long rank = (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total);
+		rank = Math.max(1, rank);
+
+		long seen = 0;
+
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+
+			if (seen >= rank) {
+				return Math.min(highestValueOf(i), max.get());
+			}
+		}
+
+		return max.get();
+	}
+
+	/**
+	 * Bucket of a value: values under 2 * SUB_BUCKETS have their own bucket,
+	 * then each power of two range has SUB_BUCKETS buckets
+	 */
+	static int indexOf(long value) {
+
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+
+		if (exponent > MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+
+		return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * Highest value falling in a bucket
+	 */
+	static long highestValueOf(int index) {
+
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+
+		int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+		long subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+		int shift = exponent - SUB_BUCKET_BITS;
+
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
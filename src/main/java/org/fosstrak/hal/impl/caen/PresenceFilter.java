@@ -0,0 +1,242 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.fosstrak.hal.TagDescriptor;
+
+/**
+ * Smooths the presence of tags at the edge of the read field. A tag missed by
+ * an inventory is still reported as present until it has been missed in a
+ * given number of consecutive rounds or has not been seen for a given time,
+ * whichever comes first (a criterion set to 0 is not applied).
+ *
+ * Every read point keeps its tags in an open addressing table holding the
+ * last seen timestamp and the consecutive misses of each tag; once the table
+ * has grown to the tag population, rounds do not allocate in it.
+ *
+ * @author David Figueroa
+ */
+class PresenceFilter {
+
+	/**
+	 * Tags considered present after a round
+	 */
+	static final class Presence {
+
+		final EpcKey[] ids;
+
+		/**
+		 * Descriptors of the tags, null unless every tag has one
+		 */
+		final TagDescriptor[] descriptors;
+
+		Presence(EpcKey[] ids, TagDescriptor[] descriptors) {
+			this.ids = ids;
+			this.descriptors = descriptors;
+		}
+	}
+
+	private final Map<String, PresenceTable> tables = new HashMap<String, PresenceTable>();
+
+	private volatile int maxMissedRounds = 0;
+	private volatile long window = 0;
+
+	/**
+	 * @param maxMissedRounds
+	 *            consecutive rounds a tag may be missed before it is gone, 0
+	 *            not to count rounds
+	 * @param window
+	 *            milliseconds a tag may go unseen before it is gone, 0 not to
+	 *            take time into account
+	 */
+	public synchronized void configure(int maxMissedRounds, long window) {
+		this.maxMissedRounds = Math.max(0, maxMissedRounds);
+		this.window = Math.max(0, window);
+		tables.clear();
+	}
+
+	/**
+	 * @return true if any smoothing criterion is configured
+	 */
+	public boolean isEnabled() {
+		return maxMissedRounds > 0 || window > 0;
+	}
+
+	/**
+	 * Feeds a new round of a read point
+	 *
+	 * @param readPointName
+	 * @param ids
+	 *            tags seen in the round
+	 * @param descriptors
+	 *            descriptor of each id, may be null
+	 * @param now
+	 *            time of the round
+	 * @return the tags considered present
+	 */
+	public synchronized Presence update(String readPointName, EpcKey[] ids, TagDescriptor[] descriptors, long now) {
+
+		PresenceTable table = tables.get(readPointName);
+
+		if (table == null) {
+			table = new PresenceTable();
+			tables.put(readPointName, table);
+		}
+
+		return table.update(ids, descriptors, now);
+	}
+
+	/**
+	 * Tags of one read point, open addressing with linear probing
+	 */
+	private class PresenceTable {
+
+		private EpcKey[] keys;
+		private int[] hashes;
+		private long[] lastSeen;
+		private int[] misses;
+		private TagDescriptor[] tds;
+		private int mask;
+		private int size = 0;
+
+		PresenceTable() {
+			allocate(16);
+		}
+
+		Presence update(EpcKey[] ids, TagDescriptor[] descriptors, long now) {
+
+			// refresh the tags seen in this round
+			for (int k = 0; k < ids.length; k++) {
+				int hash = TagSet.spread(ids[k].hashCode());
+				int i = find(ids[k], hash);
+
+				if (keys[i] == null) {
+					keys[i] = ids[k];
+					hashes[i] = hash;
+					size++;
+				}
+				lastSeen[i] = now;
+				misses[i] = -1;
+				tds[i] = descriptors == null ? null : descriptors[k];
+
+				if (size * 2 > keys.length) {
+					rehash(keys.length * 2);
+				}
+			}
+
+			// count a miss for everyone else
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] != null) {
+					misses[i]++;
+				}
+			}
+
+			// drop the expired tags
+			int i = 0;
+			boolean described = true;
+
+			while (i < keys.length) {
+				if (keys[i] != null) {
+					if ((maxMissedRounds > 0 && misses[i] >= maxMissedRounds)
+							|| (window > 0 && now - lastSeen[i] >= window)) {
+						// delete shifts a later entry into slot i, look at it again
+						delete(i);
+						continue;
+					}
+					described &= tds[i] != null;
+				}
+				i++;
+			}
+
+			EpcKey[] present = new EpcKey[size];
+			TagDescriptor[] presentTds = described ? new TagDescriptor[size] : null;
+			int n = 0;
+
+			for (i = 0; i < keys.length; i++) {
+				if (keys[i] != null) {
+					if (presentTds != null) {
+						presentTds[n] = tds[i];
+					}
+					present[n++] = keys[i];
+				}
+			}
+
+			return new Presence(present, presentTds);
+		}
+
+		private int find(EpcKey id, int hash) {
+
+			int i = hash & mask;
+
+			while (keys[i] != null && (hashes[i] != hash || !keys[i].equals(id))) {
+				i = (i + 1) & mask;
+			}
+
+			return i;
+		}
+
+		private void delete(int i) {
+
+			keys[i] = null;
+			tds[i] = null;
+			size--;
+
+			int j = (i + 1) & mask;
+
+			while (keys[j] != null) {
+				int home = hashes[j] & mask;
+
+				if (((j - home) & mask) >= ((j - i) & mask)) {
+					move(j, i);
+					i = j;
+				}
+				j = (j + 1) & mask;
+			}
+		}
+
+		private void move(int from, int to) {
+			keys[to] = keys[from];
+			hashes[to] = hashes[from];
+			lastSeen[to] = lastSeen[from];
+			misses[to] = misses[from];
+			tds[to] = tds[from];
+			keys[from] = null;
+			tds[from] = null;
+		}
+
+		private void rehash(int capacity) {
+
+			EpcKey[] oldKeys = keys;
+			int[] oldHashes = hashes;
+			long[] oldLastSeen = lastSeen;
+			int[] oldMisses = misses;
+			TagDescriptor[] oldTds = tds;
+
+			allocate(capacity);
+
+			for (int k = 0; k < oldKeys.length; k++) {
+				if (oldKeys[k] != null) {
+					int i = find(oldKeys[k], oldHashes[k]);
+					keys[i] = oldKeys[k];
+					hashes[i] = oldHashes[k];
+					lastSeen[i] = oldLastSeen[k];
+					misses[i] = oldMisses[k];
+					tds[i] = oldTds[k];
+				}
+			}
+		}
+
+		private void allocate(int capacity) {
+			keys = new EpcKey[capacity];
+			hashes = new int[capacity];
+			lastSeen = new long[capacity];
+			misses = new int[capacity];
+			tds = new TagDescriptor[capacity];
+			mask = capacity - 1;
+		}
+	}
+}
@@ -0,0 +1,237 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+import org.fosstrak.hal.HardwareException;
+
+/**
+ * Reconnects a lost reader in a background thread. Candidate ports are tried
+ * in the order given by the target, usually the last known good port first;
+ * between two unsuccessful passes the supervisor backs off exponentially, with
+ * some jitter so that several controllers do not retry in lockstep.
+ *
+ * @author David Figueroa
+ */
+class ReconnectSupervisor implements Runnable {
+
+	static Logger log = Logger.getLogger(ReconnectSupervisor.class);
+
+	/**
+	 * Reader the supervisor reconnects
+	 */
+	interface Target {
+
+		/**
+		 * @return true once the reader is connected again, for instance after
+		 *         a reset
+		 */
+		boolean isConnected();
+
+		/**
+		 * @return the ports to try, in order of preference
+		 */
+		String[] getCandidatePorts();
+
+		/**
+		 * Connects the reader to the given port
+		 */
+		void connect(String port) throws HardwareException;
+	}
+
+	/**
+	 * Maximum fraction of the backoff added or subtracted as jitter
+	 */
+	private static final double JITTER = 0.2;
+
+	private final String name;
+	private final Target target;
+	private final Random random = new Random();
+
+	private volatile long initialBackoff = 500;
+	private volatile long maxBackoff = 30000;
+
+	/**
+	 * The reconnecting thread, null while idle
+	 */
+	private Thread thread;
+
+	/**
+	 * Set by shutdown, no reconnection starts afterwards
+	 */
+	private boolean shutdown = false;
+
+	/**
+	 * When the current outage was reported
+	 */
+	private long disconnectedSince;
+
+	private volatile long reconnects = 0;
+	private volatile long lastRecoveryTime = -1;
+
+	/**
+	 * @param name
+	 *            name used for the thread, usually the HAL name
+	 * @param target
+	 *            the reader to reconnect
+	 */
+	public ReconnectSupervisor(String name, Target target) {
+		this.name = name;
+		this.target = target;
+	}
+
+	/**
+	 * @param initialBackoff
+	 *            wait after the first unsuccessful pass, in milliseconds
+	 * @param maxBackoff
+	 *            upper bound for the wait between passes, in milliseconds
+	 */
+	public void setBackoff(long initialBackoff, long maxBackoff) {
+		this.initialBackoff = Math.max(1, initialBackoff);
+		this.maxBackoff = Math.max(this.initialBackoff, maxBackoff);
+	}
+
+	/**
+	 * Starts reconnecting unless the supervisor is already at it or shut
+	 * down, returns immediately.
+	 */
+	public synchronized void requestReconnect() {
+
+		if (thread != null || shutdown) {
+			return;
+		}
+
+		disconnectedSince = System.currentTimeMillis();
+
+		log.info("requestReconnect: " + name + " lost its reader, reconnecting in background");
+
+		thread = new Thread(this, name + "-reconnect");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops reconnecting for good and waits for the thread to end. A
+	 * connection attempt in progress is not interrupted, the target must
+	 * refuse new ones once it is shut down.
+	 *
+	 * @param timeout
+	 *            longest wait for the thread in milliseconds
+	 * @return true if the thread ended
+	 */
+	public boolean shutdown(long timeout) {
+
+		Thread stopped;
+
+		synchronized (this) {
+			shutdown = true;
+			stopped = thread;
+			thread = null;
+		}
+
+		if (stopped == null) {
+			return true;
+		}
+
+		stopped.interrupt();
+
+		try {
+			stopped.join(timeout);
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		return !stopped.isAlive();
+	}
+
+	private synchronized boolean isShutdown() {
+		return shutdown;
+	}
+
+	/**
+	 * @return true while the supervisor is trying to reconnect
+	 */
+	public synchronized boolean isReconnecting() {
+		return thread != null;
+	}
+
+	/**
+	 * @return number of successful reconnections
+	 */
+	public long getReconnects() {
+		return reconnects;
+	}
+
+	/**
+	 * @return duration of the last outage in milliseconds, from the moment it
+	 *         was reported until the reader was connected again, -1 if none
+	 */
+	public long getLastRecoveryTime() {
+		return lastRecoveryTime;
+	}
+
+	public void run() {
+
+		long backoff = initialBackoff;
+
+		while (!Thread.currentThread().isInterrupted() && !isShutdown()) {
+
+			for (String port : target.getCandidatePorts()) {
+
+				if (isShutdown()) {
+					finished();
+					return;
+				}
+
+				if (target.isConnected()) {
+					finished();
+					return;
+				}
+
+				log.debug("run: trying to connect to port, " + port);
+
+				try {
+					target.connect(port);
+					recovered(port);
+					return;
+
+				} catch (HardwareException e) {
+				}
+			}
+
+			long jitter = (long) (backoff * JITTER * (2 * random.nextDouble() - 1));
+
+			try {
+				Thread.sleep(backoff + jitter);
+
+			} catch (InterruptedException e) {
+				break;
+			}
+
+			backoff = Math.min(maxBackoff, backoff * 2);
+		}
+
+		finished();
+	}
+
+	private synchronized void recovered(String port) {
+
+		lastRecoveryTime = System.currentTimeMillis() - disconnectedSince;
+		reconnects++;
+
+		log.info("run: " + name + " reconnected on " + port + " after " + lastRecoveryTime + " ms");
+
+		finished();
+	}
+
+	private synchronized void finished() {
+
+		if (thread == Thread.currentThread()) {
+			thread = null;
+		}
+	}
+}
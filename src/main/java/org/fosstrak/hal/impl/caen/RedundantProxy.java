@@ -0,0 +1,426 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.soap.SOAPFaultException;
+
+import net.java.dev.jaxb.array.StringArray;
+
+import org.apache.log4j.Logger;
+
+import com.asisoft.caen.host.service.CaenRFIDProxy;
+
+/**
+ * Proxy service of a reader reachable through several host computers. A call
+ * goes to the preferred endpoint, the one that answered the last call first;
+ * if it has not answered when its latency reaches the hedge percentile, the
+ * same call is sent to the next endpoint, and so on, and the first answer
+ * wins. An endpoint failing to answer hands the call to the next one at once.
+ * A SOAP fault is an answer and is not retried.
+ *
+ * The losing calls are not cancelled, they end in background and their
+ * latency is still recorded. The generations of getInventoryChanges are only
+ * meaningful to the endpoint that produced them: the generation is only sent
+ * to the endpoint that answered the previous getInventoryChanges, the others
+ * are asked for a full inventory. Parameters are read by name, see
+ * {@link #getParameter(String)}, CaenTCPController publishes them as
+ * endpoints.&lt;readPoint&gt;.&lt;parameter&gt;:
+ *
+ * <pre>
+ * hedged                    calls sent to a second endpoint
+ * &lt;n&gt;.address             address of the n-th endpoint
+ * &lt;n&gt;.calls               calls answered by the endpoint
+ * &lt;n&gt;.errors              calls the endpoint did not answer
+ * &lt;n&gt;.wins                calls the endpoint answered first
+ * &lt;n&gt;.latency.mean        latency in microseconds, also .p50, .p90 and
+ *                           .p99
+ * </pre>
+ *
+ * @author David Figueroa
+ */
+class RedundantProxy implements CaenRFIDProxy {
+
+	static Logger log = Logger.getLogger(RedundantProxy.class);
+
+	private static final String[] ENDPOINT_METRICS = { "address", "calls", "errors", "wins", "latency.mean",
+			"latency.p50", "latency.p90", "latency.p99" };
+
+	/**
+	 * Latencies recorded before an endpoint is hedged, its percentile is not
+	 * meaningful before
+	 */
+	private static final int MIN_SAMPLES = 20;
+
+	/**
+	 * Runs the calls of all the redundant proxies of the JVM
+	 */
+	private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "caen-proxy-call");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * A call to the proxy service
+	 */
+	private static abstract class Call<T> {
+
+		abstract T call(Endpoint endpoint);
+
+		/**
+		 * The endpoint answered first, its answer is the result
+		 */
+		void answered(Endpoint endpoint) {
+		}
+	}
+
+	private final Endpoint[] endpoints;
+
+	private volatile double hedgePercentile = 95;
+	private volatile long hedgeMinDelay = 10;
+
+	private volatile int preferred = 0;
+
+	/**
+	 * Endpoint that answered the last getInventoryChanges, -1 if none
+	 */
+	private volatile int changesEndpoint = -1;
+
+	private final AtomicLong hedged = new AtomicLong();
+
+	/**
+	 * @param addresses
+	 *            addresses of the endpoints, in order of preference
+	 * @param ports
+	 *            their ports
+	 */
+	public RedundantProxy(List<String> addresses, List<CaenRFIDProxy> ports) {
+
+		endpoints = new Endpoint[ports.size()];
+
+		for (int i = 0; i < endpoints.length; i++) {
+			endpoints[i] = new Endpoint(i, addresses.get(i), ports.get(i));
+		}
+	}
+
+	/**
+	 * @param hedgePercentile
+	 *            latency percentile of the endpoint after which a call is
+	 *            sent to the next one, 0 to only move on when an endpoint
+	 *            fails
+	 * @param hedgeMinDelay
+	 *            minimum wait in milliseconds before hedging
+	 */
+	public void configure(double hedgePercentile, long hedgeMinDelay) {
+		this.hedgePercentile = Math.min(100, Math.max(0, hedgePercentile));
+		this.hedgeMinDelay = Math.max(1, hedgeMinDelay);
+	}
+
+	/* (non-Javadoc)
+	 * @see com.asisoft.caen.host.service.CaenRFIDProxy#getVersion()
+	 */
+	public String getVersion() {
+		return invoke(new Call<String>() {
+
+			public String call(Endpoint endpoint) {
+				return endpoint.port.getVersion();
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.asisoft.caen.host.service.CaenRFIDProxy#getInventory()
+	 */
+	public StringArray getInventory() {
+		return invoke(new Call<StringArray>() {
+
+			public StringArray call(Endpoint endpoint) {
+				return endpoint.port.getInventory();
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.asisoft.caen.host.service.CaenRFIDProxy#getInventoryPacked()
+	 */
+	public byte[] getInventoryPacked() {
+		return invoke(new Call<byte[]>() {
+
+			public byte[] call(Endpoint endpoint) {
+				return endpoint.port.getInventoryPacked();
+			}
+		});
+	}
+
+	/* (non-Javadoc)
+	 * @see com.asisoft.caen.host.service.CaenRFIDProxy#getInventoryChanges(long)
+	 */
+	public byte[] getInventoryChanges(final long generation) {
+
+		final int pinned = changesEndpoint;
+
+		return invoke(new Call<byte[]>() {
+
+			public byte[] call(Endpoint endpoint) {
+				// another host could accept the generation and answer changes
+				// against an unrelated inventory
+				return endpoint.port.getInventoryChanges(endpoint.index == pinned ? generation : -1);
+			}
+
+			void answered(Endpoint endpoint) {
+				changesEndpoint = endpoint.index;
+			}
+		});
+	}
+
+	private <T> T invoke(Call<T> call) {
+
+		if (endpoints.length == 1) {
+			T result = endpoints[0].call(call);
+			endpoints[0].wins.incrementAndGet();
+			call.answered(endpoints[0]);
+			return result;
+		}
+
+		int first = preferred;
+
+		CompletionService<T> completion = new ExecutorCompletionService<T>(executor);
+		List<Future<T>> futures = new ArrayList<Future<T>>(endpoints.length);
+
+		RuntimeException failure = null;
+		int failed = 0;
+
+		futures.add(completion.submit(task(endpoints[first], call)));
+
+		try {
+
+			while (failed < futures.size() || futures.size() < endpoints.length) {
+
+				Future<T> done;
+
+				if (futures.size() == endpoints.length) {
+					done = completion.take();
+
+				} else if (failed == futures.size()) {
+					// every endpoint called so far failed, go on at once
+					futures.add(completion.submit(task(endpoints[(first + futures.size()) % endpoints.length], call)));
+					continue;
+
+				} else {
+					long delay = getHedgeDelay(endpoints[(first + futures.size() - 1) % endpoints.length]);
+					done = delay > 0 ? completion.poll(delay, TimeUnit.MILLISECONDS) : completion.take();
+
+					if (done == null) {
+						hedged.incrementAndGet();
+						Endpoint next = endpoints[(first + futures.size()) % endpoints.length];
+
+						log.debug("invoke: no answer after " + delay + " ms, hedging to " + next.address);
+
+						futures.add(completion.submit(task(next, call)));
+						continue;
+					}
+				}
+
+				int index = (first + futures.indexOf(done)) % endpoints.length;
+
+				try {
+					T result = done.get();
+
+					endpoints[index].wins.incrementAndGet();
+					preferred = index;
+					call.answered(endpoints[index]);
+
+					return result;
+
+				} catch (ExecutionException e) {
+					failed++;
+
+					Throwable cause = e.getCause();
+
+					if (cause instanceof SOAPFaultException) {
+						throw (SOAPFaultException) cause;
+					}
+
+					if (failure == null) {
+						failure = cause instanceof RuntimeException ? (RuntimeException) cause : new WebServiceException(
+								cause);
+					}
+				}
+			}
+
+			throw failure;
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new WebServiceException("Interrupted while waiting for the reader proxy", e);
+		}
+	}
+
+	/**
+	 * @return milliseconds to wait for the endpoint before hedging, 0 to wait
+	 *         until it answers or fails
+	 */
+	private long getHedgeDelay(Endpoint endpoint) {
+
+		if (hedgePercentile <= 0 || endpoint.latency.getCount() < MIN_SAMPLES) {
+			return 0;
+		}
+
+		return Math.max(hedgeMinDelay, endpoint.latency.getValueAtPercentile(hedgePercentile) / 1000);
+	}
+
+	private <T> Callable<T> task(final Endpoint endpoint, final Call<T> call) {
+		return new Callable<T>() {
+
+			public T call() {
+				return endpoint.call(call);
+			}
+		};
+	}
+
+	/**
+	 * @param prefix
+	 *            prepended to every name
+	 * @return names of the parameters of the endpoints
+	 */
+	public List<String> getParameterNames(String prefix) {
+
+		List<String> names = new ArrayList<String>();
+
+		names.add(prefix + "hedged");
+
+		for (int i = 0; i < endpoints.length; i++) {
+			for (String metric : ENDPOINT_METRICS) {
+				names.add(prefix + i + "." + metric);
+			}
+		}
+
+		return names;
+	}
+
+	/**
+	 * @param parameter
+	 *            parameter name, without prefix
+	 * @return the current value, null if the parameter is unknown
+	 */
+	public String getParameter(String parameter) {
+
+		if ("hedged".equals(parameter)) {
+			return String.valueOf(hedged.get());
+		}
+
+		int dot = parameter.indexOf('.');
+
+		if (dot < 0) {
+			return null;
+		}
+
+		int index;
+
+		try {
+			index = Integer.parseInt(parameter.substring(0, dot));
+
+		} catch (NumberFormatException e) {
+			return null;
+		}
+
+		if (index < 0 || index >= endpoints.length) {
+			return null;
+		}
+
+		return endpoints[index].get(parameter.substring(dot + 1));
+	}
+
+	/**
+	 * One host computer of the reader
+	 */
+	private static class Endpoint {
+
+		final int index;
+		final String address;
+		final CaenRFIDProxy port;
+
+		final LatencyHistogram latency = new LatencyHistogram();
+		final AtomicLong calls = new AtomicLong();
+		final AtomicLong errors = new AtomicLong();
+		final AtomicLong wins = new AtomicLong();
+
+		Endpoint(int index, String address, CaenRFIDProxy port) {
+			this.index = index;
+			this.address = address;
+			this.port = port;
+		}
+
+		<T> T call(Call<T> call) {
+
+			long start = System.nanoTime();
+
+			try {
+				T result = call.call(this);
+
+				latency.record((System.nanoTime() - start) / 1000);
+				calls.incrementAndGet();
+
+				return result;
+
+			} catch (SOAPFaultException e) {
+				// answered with a fault
+				latency.record((System.nanoTime() - start) / 1000);
+				calls.incrementAndGet();
+				throw e;
+
+			} catch (RuntimeException e) {
+				errors.incrementAndGet();
+				throw e;
+			}
+		}
+
+		String get(String metric) {
+
+			if ("address".equals(metric)) {
+				return address;
+			}
+			if ("calls".equals(metric)) {
+				return String.valueOf(calls.get());
+			}
+			if ("errors".equals(metric)) {
+				return String.valueOf(errors.get());
+			}
+			if ("wins".equals(metric)) {
+				return String.valueOf(wins.get());
+			}
+			if ("latency.mean".equals(metric)) {
+				return String.valueOf(latency.getMean());
+			}
+			if ("latency.p50".equals(metric)) {
+				return String.valueOf(latency.getValueAtPercentile(50));
+			}
+			if ("latency.p90".equals(metric)) {
+				return String.valueOf(latency.getValueAtPercentile(90));
+			}
+			if ("latency.p99".equals(metric)) {
+				return String.valueOf(latency.getValueAtPercentile(99));
+			}
+
+			return null;
+		}
+	}
+}
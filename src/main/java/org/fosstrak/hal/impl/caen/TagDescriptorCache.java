@@ -0,0 +1,236 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.fosstrak.hal.MemoryBankDescriptor;
+import org.fosstrak.hal.MemoryDescriptor;
+import org.fosstrak.hal.TagDescriptor;
+import org.fosstrak.hal.transponder.EPCTransponderModel;
+import org.fosstrak.hal.transponder.IDType;
+
+/**
+ * Per-controller cache of the tag descriptors handed out with every
+ * observation. Descriptors are immutable and only depend on the transponder
+ * model and the id type, so they are built once and shared by every tag of
+ * the same model until the controller is initialized or reset again.
+ *
+ * The models resolved by TransponderModelResolver are shared instances, so
+ * lookups first scan a small copy-on-write table of the models already seen,
+ * compared by identity, and do not allocate once the models in the field have
+ * been seen.
+ *
+ * @author David Figueroa
+ */
+class TagDescriptorCache {
+
+	/**
+	 * Model instances kept in the identity table, other instances are only
+	 * looked up by memory layout
+	 */
+	private static final int MAX_MODELS = 64;
+
+	/**
+	 * Descriptors already built, keyed by the memory layout of the model
+	 */
+	private final ConcurrentMap<ModelKey, TagDescriptor> descriptors = new ConcurrentHashMap<ModelKey, TagDescriptor>();
+
+	/**
+	 * Model instances already looked up and their descriptors, replaced on
+	 * every miss
+	 */
+	private volatile ModelEntry[] models = new ModelEntry[0];
+
+	/**
+	 * Incremented by invalidate, a descriptor built before is not remembered
+	 */
+	private volatile int version = 0;
+
+	/**
+	 * The IdTypes configuration file
+	 */
+	private volatile String idTypesConfig;
+
+	/**
+	 * EPC id type, resolved lazily from idTypesConfig
+	 */
+	private volatile IDType epcIdType;
+
+	/**
+	 * Drops every cached descriptor, subsequent lookups rebuild them using the
+	 * given id types configuration.
+	 *
+	 * @param idTypesConfig
+	 *            the IdTypes configuration file
+	 */
+	public synchronized void invalidate(String idTypesConfig) {
+		this.idTypesConfig = idTypesConfig;
+		this.epcIdType = null;
+		models = new ModelEntry[0];
+		version++;
+		descriptors.clear();
+	}
+
+	/**
+	 * Returns the shared descriptor for the given transponder model
+	 *
+	 * @param tagModel
+	 * @return the tag descriptor of an EPC class 1 gen 2 tag of that model
+	 */
+	public TagDescriptor getTagDescriptor(EPCTransponderModel tagModel) {
+
+		ModelEntry[] currentModels = models;
+
+		for (int i = 0; i < currentModels.length; i++) {
+			if (currentModels[i].model == tagModel) {
+				return currentModels[i].descriptor;
+			}
+		}
+
+		int currentVersion = version;
+		TagDescriptor td = lookup(tagModel);
+		remember(tagModel, td, currentVersion);
+
+		return td;
+	}
+
+	/**
+	 * Returns the descriptor of the memory layout of the model, built once
+	 */
+	private TagDescriptor lookup(EPCTransponderModel tagModel) {
+
+		ModelKey key = new ModelKey(tagModel);
+		TagDescriptor td = descriptors.get(key);
+
+		if (td == null) {
+			td = createTagDescriptor(tagModel);
+			TagDescriptor previous = descriptors.putIfAbsent(key, td);
+
+			if (previous != null) {
+				td = previous;
+			}
+		}
+
+		return td;
+	}
+
+	/**
+	 * Adds the model instance to the identity table, unless it is full
+	 */
+	private synchronized void remember(EPCTransponderModel tagModel, TagDescriptor td, int builtVersion) {
+
+		ModelEntry[] currentModels = models;
+
+		if (builtVersion != version || currentModels.length >= MAX_MODELS) {
+			return;
+		}
+
+		for (int i = 0; i < currentModels.length; i++) {
+			if (currentModels[i].model == tagModel) {
+				return;
+			}
+		}
+
+		ModelEntry[] newModels = new ModelEntry[currentModels.length + 1];
+		System.arraycopy(currentModels, 0, newModels, 0, currentModels.length);
+		newModels[currentModels.length] = new ModelEntry(tagModel, td);
+
+		models = newModels;
+	}
+
+	private TagDescriptor createTagDescriptor(EPCTransponderModel tagModel) {
+
+		IDType idType = epcIdType;
+
+		if (idType == null) {
+			idType = IDType.getIdType("EPC", idTypesConfig);
+			epcIdType = idType;
+		}
+
+		MemoryBankDescriptor[] memoryBankDescriptors = new MemoryBankDescriptor[4];
+		memoryBankDescriptors[0] = new MemoryBankDescriptor(tagModel.getReservedSize(),
+				tagModel.getReservedReadable(), tagModel.getReservedWriteable());
+		memoryBankDescriptors[1] = new MemoryBankDescriptor(tagModel.getEpcSize(), tagModel.getEpcReadable(),
+				tagModel.getEpcWriteable());
+		memoryBankDescriptors[2] = new MemoryBankDescriptor(tagModel.getTidSize(), tagModel.getTidReadable(),
+				tagModel.getTidWriteable());
+		memoryBankDescriptors[3] = new MemoryBankDescriptor(tagModel.getUserSize(), tagModel.getUserReadable(),
+				tagModel.getUserWriteable());
+
+		MemoryDescriptor memoryDescriptor = new MemoryDescriptor(memoryBankDescriptors);
+
+		return new TagDescriptor(idType, memoryDescriptor);
+	}
+
+	/**
+	 * A model instance and its descriptor
+	 */
+	private static final class ModelEntry {
+
+		final EPCTransponderModel model;
+		final TagDescriptor descriptor;
+
+		ModelEntry(EPCTransponderModel model, TagDescriptor descriptor) {
+			this.model = model;
+			this.descriptor = descriptor;
+		}
+	}
+
+	/**
+	 * Identifies a transponder model by the memory layout its descriptor is
+	 * built from, so that equivalent model instances share one descriptor.
+	 */
+	private static final class ModelKey {
+
+		private final int reservedSize;
+		private final int epcSize;
+		private final int tidSize;
+		private final int userSize;
+
+		/**
+		 * Readable and writeable flags of the four banks packed in one int
+		 */
+		private final int access;
+
+		ModelKey(EPCTransponderModel tagModel) {
+			reservedSize = tagModel.getReservedSize();
+			epcSize = tagModel.getEpcSize();
+			tidSize = tagModel.getTidSize();
+			userSize = tagModel.getUserSize();
+
+			int flags = 0;
+			flags |= tagModel.getReservedReadable() ? 0x01 : 0;
+			flags |= tagModel.getReservedWriteable() ? 0x02 : 0;
+			flags |= tagModel.getEpcReadable() ? 0x04 : 0;
+			flags |= tagModel.getEpcWriteable() ? 0x08 : 0;
+			flags |= tagModel.getTidReadable() ? 0x10 : 0;
+			flags |= tagModel.getTidWriteable() ? 0x20 : 0;
+			flags |= tagModel.getUserReadable() ? 0x40 : 0;
+			flags |= tagModel.getUserWriteable() ? 0x80 : 0;
+			access = flags;
+		}
+
+		public int hashCode() {
+			int h = reservedSize;
+			h = 31 * h + epcSize;
+			h = 31 * h + tidSize;
+			h = 31 * h + userSize;
+			return 31 * h + access;
+		}
+
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof ModelKey)) {
+				return false;
+			}
+			ModelKey other = (ModelKey) obj;
+			return reservedSize == other.reservedSize && epcSize == other.epcSize && tidSize == other.tidSize
+					&& userSize == other.userSize && access == other.access;
+		}
+	}
+}
@@ -0,0 +1,289 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.util.List;
+
+/**
+ * Set of tag keys backed by an open addressing table with linear probing.
+ * Each entry carries the generation of the last round it was seen in, so the
+ * set can be diffed against a new round in place. The entries are also linked
+ * from the least to the most recently seen: an id seen in a round moves to
+ * the end of the list, so after the round the disappeared ids are the ones
+ * left at its head. Looking for them costs the number of disappeared ids, not
+ * the size of the table.
+ *
+ * The table holds entry numbers, which do not change while an id is in the
+ * set; deletions and rehashes only move the slots.
+ *
+ * Not thread safe.
+ *
+ * @author David Figueroa
+ */
+class TagSet {
+
+	private static final int MIN_CAPACITY = 16;
+
+	private static final int NONE = -1;
+
+	/**
+	 * Entry number plus one of every slot, 0 for an empty slot
+	 */
+	private int[] slots;
+	private int mask;
+
+	/**
+	 * The entries, by entry number
+	 */
+	private EpcKey[] ids;
+	private int[] hashes;
+	private int[] generations;
+
+	/**
+	 * Links of the entries from the least to the most recently seen. Free
+	 * entries are chained by next
+	 */
+	private int[] previous;
+	private int[] next;
+
+	private int head = NONE;
+	private int tail = NONE;
+	private int free = NONE;
+
+	/**
+	 * Entry numbers used so far
+	 */
+	private int entries = 0;
+
+	private int size = 0;
+
+	/**
+	 * Generation of the current round
+	 */
+	private int generation = 0;
+
+	public TagSet() {
+		slots = new int[MIN_CAPACITY];
+		mask = MIN_CAPACITY - 1;
+		allocateEntries(MIN_CAPACITY / 2);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return true if the id is in the set
+	 */
+	public boolean contains(EpcKey id) {
+		return slots[find(id, spread(id.hashCode()))] != 0;
+	}
+
+	/**
+	 * Replaces the content of the set by the ids of a new round, reporting the
+	 * differences.
+	 *
+	 * @param round
+	 *            ids seen in the new round
+	 * @param appeared
+	 *            receives the ids not present in the previous round
+	 * @param gone
+	 *            receives the ids of the previous round missing in this one
+	 */
+	public void update(EpcKey[] round, List<EpcKey> appeared, List<EpcKey> gone) {
+
+		generation++;
+
+		for (EpcKey id : round) {
+			int hash = spread(id.hashCode());
+			int slot = find(id, hash);
+
+			if (slots[slot] == 0) {
+				insert(slot, id, hash);
+				appeared.add(id);
+
+			} else {
+				int entry = slots[slot] - 1;
+
+				if (generations[entry] != generation) {
+					generations[entry] = generation;
+					unlink(entry);
+					append(entry);
+				}
+			}
+		}
+
+		// the ids of this round are at the tail, the unseen ones ahead of them
+		while (head != NONE && generations[head] != generation) {
+			gone.add(ids[head]);
+			remove(head);
+		}
+	}
+
+	private int find(EpcKey id, int hash) {
+
+		int i = hash & mask;
+
+		while (slots[i] != 0) {
+			int entry = slots[i] - 1;
+
+			if (hashes[entry] == hash && ids[entry].equals(id)) {
+				break;
+			}
+			i = (i + 1) & mask;
+		}
+
+		return i;
+	}
+
+	private void insert(int slot, EpcKey id, int hash) {
+
+		int entry = newEntry();
+
+		ids[entry] = id;
+		hashes[entry] = hash;
+		generations[entry] = generation;
+		append(entry);
+
+		slots[slot] = entry + 1;
+		size++;
+
+		// keep the load factor under one half
+		if (size * 2 > slots.length) {
+			rehash(slots.length * 2);
+		}
+	}
+
+	private void remove(int entry) {
+
+		deleteSlot(find(ids[entry], hashes[entry]));
+		unlink(entry);
+
+		ids[entry] = null;
+		next[entry] = free;
+		free = entry;
+		size--;
+	}
+
+	/**
+	 * Backward shift deletion, keeps every probe sequence without tombstones
+	 */
+	private void deleteSlot(int i) {
+
+		slots[i] = 0;
+
+		int j = (i + 1) & mask;
+
+		while (slots[j] != 0) {
+			int home = hashes[slots[j] - 1] & mask;
+
+			// move j into the hole if the hole lies between home and j
+			if (((j - home) & mask) >= ((j - i) & mask)) {
+				slots[i] = slots[j];
+				slots[j] = 0;
+				i = j;
+			}
+			j = (j + 1) & mask;
+		}
+	}
+
+	private void append(int entry) {
+
+		previous[entry] = tail;
+		next[entry] = NONE;
+
+		if (tail == NONE) {
+			head = entry;
+		} else {
+			next[tail] = entry;
+		}
+		tail = entry;
+	}
+
+	private void unlink(int entry) {
+
+		if (previous[entry] == NONE) {
+			head = next[entry];
+		} else {
+			next[previous[entry]] = next[entry];
+		}
+
+		if (next[entry] == NONE) {
+			tail = previous[entry];
+		} else {
+			previous[next[entry]] = previous[entry];
+		}
+	}
+
+	private int newEntry() {
+
+		if (free != NONE) {
+			int entry = free;
+			free = next[entry];
+			return entry;
+		}
+
+		if (entries == ids.length) {
+			allocateEntries(ids.length * 2);
+		}
+
+		return entries++;
+	}
+
+	private void rehash(int capacity) {
+
+		int[] oldSlots = slots;
+
+		slots = new int[capacity];
+		mask = capacity - 1;
+
+		for (int k = 0; k < oldSlots.length; k++) {
+			if (oldSlots[k] != 0) {
+				int i = hashes[oldSlots[k] - 1] & mask;
+
+				while (slots[i] != 0) {
+					i = (i + 1) & mask;
+				}
+				slots[i] = oldSlots[k];
+			}
+		}
+	}
+
+	/**
+	 * Grows the entry arrays, keeping the entries
+	 */
+	private void allocateEntries(int capacity) {
+
+		EpcKey[] oldIds = ids;
+		int[] oldHashes = hashes;
+		int[] oldGenerations = generations;
+		int[] oldPrevious = previous;
+		int[] oldNext = next;
+
+		ids = new EpcKey[capacity];
+		hashes = new int[capacity];
+		generations = new int[capacity];
+		previous = new int[capacity];
+		next = new int[capacity];
+
+		if (oldIds != null) {
+			System.arraycopy(oldIds, 0, ids, 0, entries);
+			System.arraycopy(oldHashes, 0, hashes, 0, entries);
+			System.arraycopy(oldGenerations, 0, generations, 0, entries);
+			System.arraycopy(oldPrevious, 0, previous, 0, entries);
+			System.arraycopy(oldNext, 0, next, 0, entries);
+		}
+	}
+
+	/**
+	 * Spreads the hash bits so that ids with similar hash codes do not
+	 * cluster in the table
+	 */
+	static int spread(int h) {
+		h ^= (h >>> 16);
+		h *= 0x85ebca6b;
+		h ^= (h >>> 13);
+		return h;
+	}
+}
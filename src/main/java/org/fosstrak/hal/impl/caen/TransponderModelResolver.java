@@ -0,0 +1,137 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.fosstrak.hal.transponder.EPCTransponderModel;
+
+/**
+ * Resolves the transponder model of a tag from its TID and keeps the result,
+ * so every tag with the same TID prefix (mask designer and model number)
+ * shares one model instance and the transponder models configuration is only
+ * parsed once per model.
+ *
+ * Lookups scan a small copy-on-write table and do not allocate once the
+ * models in the field have been seen.
+ *
+ * @author David Figueroa
+ */
+class TransponderModelResolver {
+
+	/**
+	 * Number of TID bytes taken into account: allocation class, mask designer
+	 * and model number
+	 */
+	private static final int PREFIX_LENGTH = 4;
+
+	/**
+	 * Configuration file with the transponder model configuration
+	 */
+	private volatile String epcTransponderModelsConfig;
+
+	/**
+	 * Resolved TID prefixes and their models, replaced on every miss
+	 */
+	private volatile long[] prefixes = new long[0];
+	private volatile EPCTransponderModel[] models = new EPCTransponderModel[0];
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Drops every resolved model, subsequent lookups use the given
+	 * configuration file.
+	 *
+	 * @param epcTransponderModelsConfig
+	 *            configuration file with the transponder model configuration
+	 */
+	public synchronized void invalidate(String epcTransponderModelsConfig) {
+		this.epcTransponderModelsConfig = epcTransponderModelsConfig;
+		models = new EPCTransponderModel[0];
+		prefixes = new long[0];
+	}
+
+	/**
+	 * Returns the shared transponder model for the given TID
+	 *
+	 * @param tid
+	 *            the TID of the tag
+	 * @return the transponder model of the tag
+	 */
+	public EPCTransponderModel resolve(byte[] tid) {
+
+		long prefix = prefixOf(tid);
+
+		// models is read before prefixes, both are written in reverse order
+		EPCTransponderModel[] currentModels = models;
+		long[] currentPrefixes = prefixes;
+
+		for (int i = 0; i < currentPrefixes.length && i < currentModels.length; i++) {
+			if (currentPrefixes[i] == prefix) {
+				hits.incrementAndGet();
+				return currentModels[i];
+			}
+		}
+
+		misses.incrementAndGet();
+		return load(prefix, tid);
+	}
+
+	/**
+	 * Number of lookups answered from the cache
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Number of lookups that had to read the transponder models configuration
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	private synchronized EPCTransponderModel load(long prefix, byte[] tid) {
+
+		for (int i = 0; i < prefixes.length; i++) {
+			if (prefixes[i] == prefix) {
+				return models[i];
+			}
+		}
+
+		EPCTransponderModel model = EPCTransponderModel.getEpcTrasponderModel(tid, epcTransponderModelsConfig);
+
+		int n = prefixes.length;
+
+		long[] newPrefixes = new long[n + 1];
+		System.arraycopy(prefixes, 0, newPrefixes, 0, n);
+		newPrefixes[n] = prefix;
+
+		EPCTransponderModel[] newModels = new EPCTransponderModel[n + 1];
+		System.arraycopy(models, 0, newModels, 0, n);
+		newModels[n] = model;
+
+		prefixes = newPrefixes;
+		models = newModels;
+
+		return model;
+	}
+
+	/**
+	 * Packs the first bytes of the TID together with their count, so TIDs
+	 * shorter than the prefix never collide with longer ones.
+	 */
+	private static long prefixOf(byte[] tid) {
+
+		int length = tid == null ? 0 : Math.min(tid.length, PREFIX_LENGTH);
+		long prefix = length;
+
+		for (int i = 0; i < length; i++) {
+			prefix = (prefix << 8) | (tid[i] & 0xFF);
+		}
+
+		return prefix;
+	}
+}
@@ -0,0 +1,112 @@
+package com.asisoft.caen.host.service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * @author David Figueroa
+ */
+public class InventoryChangesTest extends TestCase {
+
+	public void testEncodeDecode() {
+
+		byte[] a = { 0x30, 0x01 };
+		byte[] b = { 0x30, 0x02, 0x03 };
+		byte[] c = { 0x30 };
+
+		byte[] changes = InventoryChanges.encode(0x0123456789ABCDEFL, false, Arrays.asList("3001", "300203"),
+				Arrays.asList("30"));
+
+		assertEquals(0x0123456789ABCDEFL, InventoryChanges.getGeneration(changes));
+		assertFalse(InventoryChanges.isFull(changes));
+
+		List<byte[]> added = PackedInventoryTest.unpack(changes, InventoryChanges.ADDED_OFFSET);
+		assertEquals(2, added.size());
+		assertTrue(Arrays.equals(a, added.get(0)));
+		assertTrue(Arrays.equals(b, added.get(1)));
+
+		int removedOffset = InventoryChanges.getRemovedOffset(changes);
+		List<byte[]> removed = PackedInventoryTest.unpack(changes, removedOffset);
+		assertEquals(1, removed.size());
+		assertTrue(Arrays.equals(c, removed.get(0)));
+
+		assertEquals(changes.length, PackedInventory.skip(changes, removedOffset));
+	}
+
+	public void testIdsNotHex() {
+
+		byte[] changes = InventoryChanges.encode(1, false, Arrays.asList("_return1770481064"), Arrays.asList("3001",
+				"gone"));
+
+		int addedOffset = InventoryChanges.ADDED_OFFSET + PackedInventory.HEADER_LENGTH;
+		assertTrue(PackedInventory.isCharacters(changes, addedOffset));
+
+		int removedOffset = InventoryChanges.getRemovedOffset(changes);
+		assertEquals(2, PackedInventory.getCount(changes, removedOffset));
+		assertFalse(PackedInventory.isCharacters(changes, removedOffset + PackedInventory.HEADER_LENGTH));
+		assertTrue(PackedInventory.isCharacters(changes, removedOffset + PackedInventory.HEADER_LENGTH + 3));
+		assertEquals(changes.length, PackedInventory.skip(changes, removedOffset));
+	}
+
+	public void testFullResync() {
+
+		List<String> none = Collections.emptyList();
+		byte[] changes = InventoryChanges.encode(42, true, Collections.singletonList("000000000000000000000000"), none);
+
+		assertTrue(InventoryChanges.isFull(changes));
+		assertEquals(1, PackedInventory.getCount(changes, InventoryChanges.ADDED_OFFSET));
+		assertEquals(0, PackedInventory.getCount(changes, InventoryChanges.getRemovedOffset(changes)));
+	}
+
+	public void testGenerationSignBits() {
+
+		List<String> none = Collections.emptyList();
+
+		// the low word must not be sign extended into the high one
+		assertEquals(0x00000001FFFFFFFFL, InventoryChanges.getGeneration(InventoryChanges.encode(0x00000001FFFFFFFFL,
+				false, none, none)));
+		assertEquals(-1L, InventoryChanges.getGeneration(InventoryChanges.encode(-1L, false, none, none)));
+	}
+
+	public void testTruncatedHeader() {
+		try {
+			InventoryChanges.getGeneration(new byte[InventoryChanges.ADDED_OFFSET - 1]);
+			fail("truncated reply accepted");
+
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	public void testTruncatedAddedList() {
+
+		List<String> none = Collections.emptyList();
+		byte[] changes = InventoryChanges.encode(1, false, Collections.singletonList("000000000000000000000000"), none);
+
+		// cuts the reply in the middle of the added id
+		byte[] truncated = PackedInventoryTest.copy(changes, 0, InventoryChanges.ADDED_OFFSET + PackedInventory.HEADER_LENGTH + 5);
+
+		try {
+			InventoryChanges.getRemovedOffset(truncated);
+			fail("truncated added list accepted");
+
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	public void testMissingRemovedList() {
+
+		List<String> none = Collections.emptyList();
+		byte[] changes = InventoryChanges.encode(1, false, none, none);
+		byte[] truncated = PackedInventoryTest.copy(changes, 0, changes.length - PackedInventory.HEADER_LENGTH);
+
+		try {
+			PackedInventory.skip(truncated, InventoryChanges.getRemovedOffset(truncated));
+			fail("missing removed list accepted");
+
+		} catch (IllegalArgumentException e) {
+		}
+	}
+}
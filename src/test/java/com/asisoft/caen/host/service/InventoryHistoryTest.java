@@ -0,0 +1,193 @@
+package com.asisoft.caen.host.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * @author David Figueroa
+ */
+public class InventoryHistoryTest extends TestCase {
+
+	private static final String A = "300800000000000000000001";
+	private static final String B = "300800000000000000000002";
+	private static final String C = "300800000000000000000003";
+	private static final String D = "300800000000000000000004";
+
+	public void testUnknownGenerationIsFullResync() {
+
+		InventoryHistory history = new InventoryHistory();
+		long generation = history.update(Arrays.asList(A, B));
+
+		byte[] changes = history.getChanges(-1);
+
+		assertEquals(generation, InventoryChanges.getGeneration(changes));
+		assertTrue(InventoryChanges.isFull(changes));
+		assertEquals(set(A, B), added(changes));
+		assertEquals(set(), removed(changes));
+	}
+
+	public void testCurrentGenerationHasNoChanges() {
+
+		InventoryHistory history = new InventoryHistory();
+		long generation = history.update(Arrays.asList(A));
+
+		byte[] changes = history.getChanges(generation);
+
+		assertEquals(generation, InventoryChanges.getGeneration(changes));
+		assertFalse(InventoryChanges.isFull(changes));
+		assertEquals(set(), added(changes));
+		assertEquals(set(), removed(changes));
+	}
+
+	public void testSamePopulationKeepsGeneration() {
+
+		InventoryHistory history = new InventoryHistory();
+		long generation = history.update(Arrays.asList(A, B));
+
+		assertEquals(generation, history.update(Arrays.asList(B, A)));
+	}
+
+	public void testChangesSinceGeneration() {
+
+		InventoryHistory history = new InventoryHistory();
+		long first = history.update(Arrays.asList(A, B));
+		history.update(Arrays.asList(B, C));
+		long last = history.update(Arrays.asList(B, C, D));
+
+		byte[] changes = history.getChanges(first);
+
+		assertEquals(last, InventoryChanges.getGeneration(changes));
+		assertFalse(InventoryChanges.isFull(changes));
+		assertEquals(set(C, D), added(changes));
+		assertEquals(set(A), removed(changes));
+	}
+
+	public void testAddedThenRemovedCancels() {
+
+		InventoryHistory history = new InventoryHistory();
+		long first = history.update(Arrays.asList(A));
+		history.update(Arrays.asList(A, B));
+		history.update(Arrays.asList(A));
+
+		byte[] changes = history.getChanges(first);
+
+		assertFalse(InventoryChanges.isFull(changes));
+		assertEquals(set(), added(changes));
+		assertEquals(set(), removed(changes));
+	}
+
+	public void testRemovedThenAddedCancels() {
+
+		InventoryHistory history = new InventoryHistory();
+		long first = history.update(Arrays.asList(A, B));
+		history.update(Arrays.asList(A));
+		history.update(Arrays.asList(A, B));
+
+		byte[] changes = history.getChanges(first);
+
+		assertFalse(InventoryChanges.isFull(changes));
+		assertEquals(set(), added(changes));
+		assertEquals(set(), removed(changes));
+	}
+
+	public void testOldestKeptGeneration() {
+
+		InventoryHistory history = new InventoryHistory(2);
+		history.update(Arrays.asList(A));
+		long kept = history.update(Arrays.asList(B));
+		history.update(Arrays.asList(C));
+		history.update(Arrays.asList(D));
+
+		// the changes after kept are the two generations still kept
+		byte[] changes = history.getChanges(kept);
+
+		assertFalse(InventoryChanges.isFull(changes));
+		assertEquals(set(D), added(changes));
+		assertEquals(set(B), removed(changes));
+	}
+
+	public void testTooOldGenerationIsFullResync() {
+
+		InventoryHistory history = new InventoryHistory(2);
+		long first = history.update(Arrays.asList(A));
+		history.update(Arrays.asList(B));
+		history.update(Arrays.asList(C));
+		history.update(Arrays.asList(C, D));
+
+		byte[] changes = history.getChanges(first);
+
+		assertTrue(InventoryChanges.isFull(changes));
+		assertEquals(set(C, D), added(changes));
+		assertEquals(set(), removed(changes));
+	}
+
+	public void testFutureGenerationIsFullResync() {
+
+		InventoryHistory history = new InventoryHistory();
+		long generation = history.update(Arrays.asList(A));
+		history.update(Arrays.asList(A, B));
+
+		// e.g. a generation of another host or of a previous run
+		byte[] changes = history.getChanges(generation + 100);
+
+		assertTrue(InventoryChanges.isFull(changes));
+		assertEquals(set(A, B), added(changes));
+	}
+
+	public void testEmptyHistoryIsFullResync() {
+
+		InventoryHistory history = new InventoryHistory();
+
+		byte[] changes = history.getChanges(-1);
+
+		assertTrue(InventoryChanges.isFull(changes));
+		assertEquals(set(), added(changes));
+	}
+
+	public void testIdsNotHex() {
+
+		InventoryHistory history = new InventoryHistory();
+
+		// as returned by the stock readReaderInventory
+		long generation = history.update(Arrays.asList("_return1770481064"));
+
+		byte[] changes = history.getChanges(-1);
+
+		assertEquals(generation, InventoryChanges.getGeneration(changes));
+		assertEquals(1, PackedInventory.getCount(changes, InventoryChanges.ADDED_OFFSET));
+		assertTrue(PackedInventory.isCharacters(changes, InventoryChanges.ADDED_OFFSET + PackedInventory.HEADER_LENGTH));
+	}
+
+	private static Set<String> set(String... ids) {
+		return new HashSet<String>(Arrays.asList(ids));
+	}
+
+	private static Set<String> added(byte[] changes) {
+		return hex(PackedInventoryTest.unpack(changes, InventoryChanges.ADDED_OFFSET));
+	}
+
+	private static Set<String> removed(byte[] changes) {
+		return hex(PackedInventoryTest.unpack(changes, InventoryChanges.getRemovedOffset(changes)));
+	}
+
+	private static Set<String> hex(List<byte[]> ids) {
+
+		List<String> hex = new ArrayList<String>();
+
+		for (byte[] id : ids) {
+			StringBuilder builder = new StringBuilder();
+
+			for (byte b : id) {
+				builder.append(String.format("%02X", b & 0xFF));
+			}
+			hex.add(builder.toString());
+		}
+
+		return new HashSet<String>(hex);
+	}
+}
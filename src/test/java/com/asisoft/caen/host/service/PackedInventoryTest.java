@@ -0,0 +1,170 @@
+package com.asisoft.caen.host.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * @author David Figueroa
+ */
+public class PackedInventoryTest extends TestCase {
+
+	public void testPackRoundTrip() {
+
+		byte[] epc = { 0x30, 0x08, 0x33, (byte) 0xB2, (byte) 0xDD, (byte) 0xD9, 0x01, 0x40, 0x00, 0x00, 0x00, 0x01 };
+		byte[] shortId = { (byte) 0xFF };
+		byte[] longest = new byte[PackedInventory.MAX_ID_LENGTH];
+		Arrays.fill(longest, (byte) 0x5A);
+
+		byte[] packed = PackedInventory.pack(Arrays.asList(epc, shortId, longest));
+
+		assertEquals(3, PackedInventory.getCount(packed));
+		assertEquals(packed.length, PackedInventory.skip(packed, 0));
+		assertEquals(PackedInventory.HEADER_LENGTH + 3 + epc.length + shortId.length + longest.length, packed.length);
+
+		List<byte[]> ids = unpack(packed, 0);
+
+		assertTrue(Arrays.equals(epc, ids.get(0)));
+		assertTrue(Arrays.equals(shortId, ids.get(1)));
+		assertTrue(Arrays.equals(longest, ids.get(2)));
+	}
+
+	public void testPackEmpty() {
+
+		List<byte[]> none = Collections.emptyList();
+		byte[] packed = PackedInventory.pack(none);
+
+		assertEquals(PackedInventory.HEADER_LENGTH, packed.length);
+		assertEquals(0, PackedInventory.getCount(packed));
+		assertEquals(packed.length, PackedInventory.skip(packed, 0));
+	}
+
+	public void testPackHex() {
+
+		byte[] packed = PackedInventory.packHex(Arrays.asList("3008", "abc"));
+		List<byte[]> ids = unpack(packed, 0);
+
+		assertTrue(Arrays.equals(new byte[] { 0x30, 0x08 }, ids.get(0)));
+
+		// an odd number of digits has an implicit leading zero
+		assertTrue(Arrays.equals(new byte[] { 0x0A, (byte) 0xBC }, ids.get(1)));
+	}
+
+	public void testNotHexPackedAsCharacters() throws Exception {
+
+		byte[] packed = PackedInventory.packHex(Arrays.asList("3008", "_return1770481064", "30G8"));
+
+		int offset = PackedInventory.HEADER_LENGTH;
+		assertFalse(PackedInventory.isCharacters(packed, offset));
+
+		offset += 1 + PackedInventory.getIdLength(packed, offset);
+		assertTrue(PackedInventory.isCharacters(packed, offset));
+
+		offset += 1 + PackedInventory.getIdLength(packed, offset);
+		assertTrue(PackedInventory.isCharacters(packed, offset));
+
+		List<byte[]> ids = unpack(packed, 0);
+
+		assertEquals(3, ids.size());
+		assertTrue(Arrays.equals(new byte[] { 0x30, 0x08 }, ids.get(0)));
+		assertTrue(Arrays.equals("_return1770481064".getBytes("UTF-8"), ids.get(1)));
+		assertTrue(Arrays.equals("30G8".getBytes("UTF-8"), ids.get(2)));
+		assertEquals(packed.length, PackedInventory.skip(packed, 0));
+	}
+
+	public void testNotHexTooLong() {
+		try {
+			char[] id = new char[PackedInventory.MAX_ID_LENGTH + 1];
+			Arrays.fill(id, 'x');
+			PackedInventory.packHex(Arrays.asList(new String(id)));
+			fail("id longer than the length byte packed");
+
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	public void testIdTooLong() {
+		try {
+			PackedInventory.pack(Collections.singletonList(new byte[PackedInventory.MAX_ID_LENGTH + 1]));
+			fail("id longer than the length byte packed");
+
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	public void testTruncatedHeader() {
+		try {
+			PackedInventory.getCount(new byte[PackedInventory.HEADER_LENGTH - 1]);
+			fail("truncated header accepted");
+
+		} catch (IllegalArgumentException e) {
+		}
+
+		try {
+			PackedInventory.getCount(null);
+			fail("null inventory accepted");
+
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	public void testTruncatedId() {
+
+		byte[] packed = PackedInventory.pack(Arrays.asList(new byte[12], new byte[12]));
+
+		try {
+			PackedInventory.skip(copy(packed, 0, packed.length - 1), 0);
+			fail("truncated id accepted");
+
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	public void testCountBeyondData() {
+
+		byte[] packed = PackedInventory.pack(Collections.singletonList(new byte[12]));
+
+		// claims a second tag that is not there
+		PackedInventory.writeInt(packed, 0, 2);
+
+		try {
+			PackedInventory.skip(packed, 0);
+			fail("missing tag accepted");
+
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	/**
+	 * Reads the ids of the packed list starting at offset
+	 */
+	static List<byte[]> unpack(byte[] buffer, int offset) {
+
+		int count = PackedInventory.getCount(buffer, offset);
+		List<byte[]> ids = new ArrayList<byte[]>(count);
+
+		offset += PackedInventory.HEADER_LENGTH;
+
+		for (int i = 0; i < count; i++) {
+			int length = PackedInventory.getIdLength(buffer, offset);
+			ids.add(copy(buffer, offset + 1, offset + 1 + length));
+			offset += 1 + length;
+		}
+
+		return ids;
+	}
+
+	/**
+	 * @return the bytes of buffer between from and to
+	 */
+	static byte[] copy(byte[] buffer, int from, int to) {
+
+		byte[] copy = new byte[to - from];
+		System.arraycopy(buffer, from, copy, 0, copy.length);
+
+		return copy;
+	}
+}
@@ -0,0 +1,169 @@
+package org.fosstrack.hal.impl.caen.connector;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * @author David Figueroa
+ */
+public class LengthPrefixedFrameDecoderTest extends TestCase {
+
+	private ByteBuffer buffer;
+	private List<String> frames;
+	private FrameDecoder.Listener listener;
+
+	protected void setUp() {
+		buffer = ByteBuffer.allocate(256);
+		buffer.flip();
+		frames = new ArrayList<String>();
+		listener = new FrameDecoder.Listener() {
+			public void frameReceived(ByteBuffer frame) {
+				frames.add(LineFrameDecoderTest.string(frame));
+			}
+		};
+	}
+
+	public void testFrames() throws IOException {
+
+		LengthPrefixedFrameDecoder decoder = new LengthPrefixedFrameDecoder();
+
+		receive(decoder, new byte[] { 0, 0, 0, 2, 'a', 'b', 0, 0, 0, 0, 0, 0, 0, 1, 'c', 0, 0 });
+
+		assertEquals(Arrays.asList("ab", "", "c"), frames);
+		assertEquals(2, buffer.remaining());
+	}
+
+	public void testSplitFrames() throws IOException {
+
+		LengthPrefixedFrameDecoder decoder = new LengthPrefixedFrameDecoder();
+
+		receive(decoder, new byte[] { 0, 0 });
+		receive(decoder, new byte[] { 0, 3, 'a' });
+		assertTrue(frames.isEmpty());
+
+		receive(decoder, new byte[] { 'b' });
+		receive(decoder, new byte[] { 'c', 0, 0, 0, 1 });
+		assertEquals(Arrays.asList("abc"), frames);
+
+		receive(decoder, new byte[] { 'd' });
+		assertEquals(Arrays.asList("abc", "d"), frames);
+		assertEquals(0, buffer.remaining());
+	}
+
+	public void testLengthFieldSizes() throws IOException {
+
+		receive(new LengthPrefixedFrameDecoder(1, 255), new byte[] { 2, 'a', 'b' });
+		receive(new LengthPrefixedFrameDecoder(2, 1000), new byte[] { 0, 1, 'c' });
+		receive(new LengthPrefixedFrameDecoder(4, 1000), new byte[] { 0, 0, 0, 1, 'd' });
+
+		assertEquals(Arrays.asList("ab", "c", "d"), frames);
+	}
+
+	public void testUnsignedLength() throws IOException {
+
+		LengthPrefixedFrameDecoder decoder = new LengthPrefixedFrameDecoder(1, 255);
+
+		byte[] data = new byte[1 + 200];
+		data[0] = (byte) 200;
+
+		receive(decoder, data);
+
+		assertEquals(1, frames.size());
+		assertEquals(200, frames.get(0).length());
+	}
+
+	public void testOversizeLengthFails() throws IOException {
+
+		LengthPrefixedFrameDecoder decoder = new LengthPrefixedFrameDecoder(2, 100);
+
+		try {
+			receive(decoder, new byte[] { 0, 1, 'a', 0, 101, 'b' });
+			fail("oversize length accepted");
+
+		} catch (IOException e) {
+			// expected
+		}
+
+		// frames before the bad one are delivered, the position is left on it
+		assertEquals(Arrays.asList("a"), frames);
+		assertEquals(3, buffer.remaining());
+	}
+
+	public void testNegativeLengthFails() {
+
+		LengthPrefixedFrameDecoder decoder = new LengthPrefixedFrameDecoder();
+
+		try {
+			receive(decoder, new byte[] { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF });
+			fail("length above 2 GB accepted");
+
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	public void testInvalidLengthFieldSize() {
+
+		try {
+			new LengthPrefixedFrameDecoder(3, 100);
+			fail("3 bytes length accepted");
+
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testEncode() throws IOException {
+
+		LengthPrefixedFrameDecoder decoder = new LengthPrefixedFrameDecoder(2, 100);
+
+		ByteBuffer frame = decoder.encode(LineFrameDecoderTest.bytes("abc"));
+
+		assertEquals(5, frame.remaining());
+		assertEquals(3, frame.getShort(0));
+
+		byte[] data = new byte[frame.remaining()];
+		frame.get(data);
+		receive(decoder, data);
+
+		assertEquals(Arrays.asList("abc"), frames);
+	}
+
+	public void testEncodeTooLong() {
+
+		try {
+			new LengthPrefixedFrameDecoder(1, 1000).encode(ByteBuffer.allocate(256));
+			fail("payload longer than the length field accepted");
+
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+
+		try {
+			new LengthPrefixedFrameDecoder(4, 10).encode(ByteBuffer.allocate(11));
+			fail("payload longer than the maximum accepted");
+
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	public void testMaxFrameLength() {
+		assertEquals(102, new LengthPrefixedFrameDecoder(2, 100).getMaxFrameLength());
+	}
+
+	/**
+	 * Appends the data as the connection does, and decodes the buffer
+	 */
+	private void receive(FrameDecoder decoder, byte[] data) throws IOException {
+		buffer.compact();
+		buffer.put(data);
+		buffer.flip();
+		decoder.decode(buffer, listener);
+	}
+}
@@ -0,0 +1,161 @@
+package org.fosstrack.hal.impl.caen.connector;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * @author David Figueroa
+ */
+public class LineFrameDecoderTest extends TestCase {
+
+	private ByteBuffer buffer;
+	private List<String> frames;
+	private FrameDecoder.Listener listener;
+
+	protected void setUp() {
+		buffer = ByteBuffer.allocate(256);
+		buffer.flip();
+		frames = new ArrayList<String>();
+		listener = new FrameDecoder.Listener() {
+			public void frameReceived(ByteBuffer frame) {
+				frames.add(string(frame));
+			}
+		};
+	}
+
+	public void testLines() throws IOException {
+
+		LineFrameDecoder decoder = new LineFrameDecoder();
+
+		receive(decoder, "first\nsecond\n\nthird");
+
+		assertEquals(Arrays.asList("first", "second", ""), frames);
+		assertEquals("third", string(buffer));
+	}
+
+	public void testSplitFrames() throws IOException {
+
+		LineFrameDecoder decoder = new LineFrameDecoder();
+
+		receive(decoder, "fir");
+		assertTrue(frames.isEmpty());
+
+		receive(decoder, "st\nsec");
+		assertEquals(Arrays.asList("first"), frames);
+
+		receive(decoder, "o");
+		receive(decoder, "nd\n");
+		assertEquals(Arrays.asList("first", "second"), frames);
+		assertEquals(0, buffer.remaining());
+	}
+
+	public void testCrLf() throws IOException {
+
+		LineFrameDecoder decoder = new LineFrameDecoder();
+
+		receive(decoder, "first\r\nsecond\r");
+		receive(decoder, "\n\r\n");
+
+		assertEquals(Arrays.asList("first", "second", ""), frames);
+	}
+
+	public void testCrInsideLineIsKept() throws IOException {
+
+		LineFrameDecoder decoder = new LineFrameDecoder();
+
+		receive(decoder, "a\rb\n");
+
+		assertEquals(Arrays.asList("a\rb"), frames);
+	}
+
+	public void testOversizeLineDiscarded() throws IOException {
+
+		LineFrameDecoder decoder = new LineFrameDecoder(8);
+
+		receive(decoder, "short\n0123456789");
+		assertEquals(Arrays.asList("short"), frames);
+		assertEquals(0, buffer.remaining());
+
+		// the rest of the long line is skipped too
+		receive(decoder, "abcdef");
+		receive(decoder, "ghi\nnext\n");
+
+		assertEquals(Arrays.asList("short", "next"), frames);
+		assertEquals(0, buffer.remaining());
+	}
+
+	public void testBufferedBytesStayBelowMax() throws IOException {
+
+		LineFrameDecoder decoder = new LineFrameDecoder(8);
+
+		for (int i = 0; i < 10; i++) {
+			receive(decoder, "xyz");
+			assertTrue(buffer.remaining() < decoder.getMaxFrameLength());
+		}
+	}
+
+	public void testReset() throws IOException {
+
+		LineFrameDecoder decoder = new LineFrameDecoder(4);
+
+		receive(decoder, "toolong");
+		decoder.reset();
+		buffer.clear();
+		buffer.flip();
+
+		receive(decoder, "ok\n");
+
+		assertEquals(Arrays.asList("ok"), frames);
+	}
+
+	public void testEncode() {
+
+		ByteBuffer frame = new LineFrameDecoder().encode(bytes("hello"));
+
+		assertEquals("hello" + System.getProperty("line.separator"), string(frame));
+	}
+
+	public void testEncodeDecode() throws IOException {
+
+		LineFrameDecoder decoder = new LineFrameDecoder();
+
+		receive(decoder, string(decoder.encode(bytes("hello"))));
+
+		assertEquals(Arrays.asList("hello"), frames);
+	}
+
+	/**
+	 * Appends the data as the connection does, and decodes the buffer
+	 */
+	private void receive(FrameDecoder decoder, String data) throws IOException {
+		buffer.compact();
+		buffer.put(bytes(data));
+		buffer.flip();
+		decoder.decode(buffer, listener);
+	}
+
+	static ByteBuffer bytes(String s) {
+		try {
+			return ByteBuffer.wrap(s.getBytes("ISO-8859-1"));
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e.toString());
+		}
+	}
+
+	static String string(ByteBuffer buffer) {
+		byte[] data = new byte[buffer.remaining()];
+		buffer.duplicate().get(data);
+
+		try {
+			return new String(data, "ISO-8859-1");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e.toString());
+		}
+	}
+}
@@ -0,0 +1,200 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * @author David Figueroa
+ */
+public class CircuitBreakerTest extends TestCase {
+
+	/**
+	 * Reader that fails the probes until told otherwise
+	 */
+	private static class Probe implements CircuitBreaker.Probe {
+
+		final AtomicInteger probes = new AtomicInteger();
+		volatile boolean answering = false;
+
+		public void probe() throws Exception {
+			probes.incrementAndGet();
+
+			if (!answering) {
+				throw new Exception("not answering");
+			}
+		}
+	}
+
+	private final InventoryMetrics metrics = new InventoryMetrics();
+	private final Probe probe = new Probe();
+	private CircuitBreaker breaker;
+
+	protected void setUp() {
+		breaker = new CircuitBreaker("test", "rp", probe, metrics);
+		breaker.configure(3, 10);
+	}
+
+	protected void tearDown() {
+		breaker.shutdown();
+	}
+
+	public void testStartsClosed() {
+
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		assertTrue(breaker.allowRequest());
+		assertEquals("CLOSED", metrics.getParameter("metrics.rp.breaker.state"));
+	}
+
+	public void testOpensAtThreshold() {
+
+		breaker.failure();
+		breaker.failure();
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+		breaker.failure();
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertFalse(breaker.allowRequest());
+		assertEquals("1", metrics.getParameter("metrics.breaker.opened"));
+	}
+
+	public void testSuccessClearsFailures() {
+
+		breaker.failure();
+		breaker.failure();
+		breaker.success();
+		breaker.failure();
+		breaker.failure();
+
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+	}
+
+	public void testNeverOpensWithoutThreshold() {
+
+		breaker.configure(0, 10);
+
+		for (int i = 0; i < 100; i++) {
+			breaker.failure();
+		}
+		breaker.open("test");
+
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+	}
+
+	public void testProbeClosesWhenAnswering() {
+
+		breaker.open("test");
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+		probe.answering = true;
+
+		assertTrue(awaitState(CircuitBreaker.State.CLOSED));
+		assertTrue(breaker.allowRequest());
+		assertTrue(probe.probes.get() >= 1);
+	}
+
+	public void testFailedProbeReopens() {
+
+		breaker.open("test");
+
+		// probes keep failing, half-open during each of them
+		awaitProbes(3);
+		assertFalse(breaker.allowRequest());
+		assertTrue(breaker.getState() != CircuitBreaker.State.CLOSED);
+
+		probe.answering = true;
+		assertTrue(awaitState(CircuitBreaker.State.CLOSED));
+	}
+
+	public void testHalfOpenDuringProbe() throws Exception {
+
+		final Object lock = new Object();
+		final boolean[] released = { false };
+
+		breaker = new CircuitBreaker("test", "rp", new CircuitBreaker.Probe() {
+
+			public void probe() throws Exception {
+				synchronized (lock) {
+					while (!released[0]) {
+						lock.wait();
+					}
+				}
+			}
+		}, metrics);
+		breaker.configure(1, 10);
+
+		breaker.failure();
+
+		assertTrue(awaitState(CircuitBreaker.State.HALF_OPEN));
+		assertFalse(breaker.allowRequest());
+
+		synchronized (lock) {
+			released[0] = true;
+			lock.notifyAll();
+		}
+
+		assertTrue(awaitState(CircuitBreaker.State.CLOSED));
+	}
+
+	public void testResetCloses() {
+
+		breaker.open("test");
+		breaker.reset();
+
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		assertTrue(breaker.allowRequest());
+
+		// the failures before the reset are forgotten
+		breaker.failure();
+		breaker.failure();
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+		// the stopped probe does not change the state any more
+		int probes = probe.probes.get();
+		probe.answering = true;
+		sleep(50);
+		assertEquals(probes, probe.probes.get());
+	}
+
+	public void testShutdownStopsProbing() {
+
+		breaker.open("test");
+		breaker.shutdown();
+
+		int probes = probe.probes.get();
+		sleep(50);
+
+		assertEquals(probes, probe.probes.get());
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+	}
+
+	private boolean awaitState(CircuitBreaker.State state) {
+		long deadline = System.currentTimeMillis() + 5000;
+
+		while (breaker.getState() != state && System.currentTimeMillis() < deadline) {
+			Thread.yield();
+		}
+
+		return breaker.getState() == state;
+	}
+
+	private void awaitProbes(int count) {
+		long deadline = System.currentTimeMillis() + 5000;
+
+		while (probe.probes.get() < count && System.currentTimeMillis() < deadline) {
+			Thread.yield();
+		}
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
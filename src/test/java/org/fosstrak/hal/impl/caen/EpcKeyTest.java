@@ -0,0 +1,148 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * @author David Figueroa
+ */
+public class EpcKeyTest extends TestCase {
+
+	private static final byte[] EPC96 = { 0x30, 0x08, 0x33, (byte) 0xB2, (byte) 0xDD, (byte) 0xD9, 0x01, 0x40, 0x00,
+			0x00, 0x00, 0x01 };
+
+	public void testOfEqualsParse() {
+
+		EpcKey bytes = EpcKey.of(EPC96);
+		EpcKey hex = EpcKey.parse("300833B2DDD9014000000001");
+
+		assertEquals(bytes, hex);
+		assertEquals(bytes.hashCode(), hex.hashCode());
+		assertEquals(12, hex.length());
+	}
+
+	public void testSliceEqualsWhole() {
+
+		byte[] buffer = new byte[EPC96.length + 5];
+		System.arraycopy(EPC96, 0, buffer, 3, EPC96.length);
+
+		assertEquals(EpcKey.of(EPC96), EpcKey.of(buffer, 3, EPC96.length));
+	}
+
+	public void testDifferentIds() {
+
+		assertFalse(EpcKey.parse("300833B2DDD9014000000001").equals(EpcKey.parse("300833B2DDD9014000000002")));
+
+		// same value, different length
+		assertFalse(EpcKey.parse("0001").equals(EpcKey.parse("01")));
+	}
+
+	public void testPackedRoundTrip() {
+
+		byte[] id = new byte[16];
+
+		for (int i = 0; i < id.length; i++) {
+			id[i] = (byte) (0xF0 + i);
+		}
+
+		EpcKey key = EpcKey.of(id);
+
+		assertTrue(Arrays.equals(id, key.toBytes()));
+		assertTrue(Arrays.equals(id, EpcKey.parse(key.toString()).toBytes()));
+		assertEquals(key, EpcKey.parse(key.toString()));
+	}
+
+	public void testLongRoundTrip() {
+
+		byte[] id = new byte[31];
+
+		for (int i = 0; i < id.length; i++) {
+			id[i] = (byte) (i * 7);
+		}
+
+		EpcKey key = EpcKey.of(id);
+
+		assertEquals(31, key.length());
+		assertTrue(Arrays.equals(id, key.toBytes()));
+		assertEquals(key, EpcKey.parse(key.toString()));
+		assertEquals(key.hashCode(), EpcKey.parse(key.toString()).hashCode());
+	}
+
+	public void testToBytesIsCopy() {
+
+		EpcKey key = EpcKey.of(new byte[20]);
+
+		key.toBytes()[0] = 1;
+
+		assertEquals(0, key.toBytes()[0]);
+	}
+
+	public void testToStringKeepsGivenHex() {
+
+		assertEquals("300833b2ddd9014000000001", EpcKey.parse("300833b2ddd9014000000001").toString());
+		assertEquals("300833B2DDD9014000000001", EpcKey.of(EPC96).toString().toUpperCase());
+	}
+
+	public void testOddLengthHex() {
+
+		EpcKey key = EpcKey.parse("ABC");
+
+		assertEquals(2, key.length());
+		assertTrue(Arrays.equals(new byte[] { 0x0A, (byte) 0xBC }, key.toBytes()));
+		assertEquals(EpcKey.parse("0ABC"), key);
+		assertEquals("ABC", key.toString());
+	}
+
+	public void testInvalidHexKeyedByCharacters() {
+
+		EpcKey key = EpcKey.parse("NOT-HEX");
+
+		assertEquals("NOT-HEX", key.toString());
+		assertEquals(key, EpcKey.parse("NOT-HEX"));
+		assertTrue(Arrays.equals("NOT-HEX".getBytes(), key.toBytes()));
+		assertFalse(key.equals(EpcKey.parse("NOT-HEY")));
+	}
+
+	public void testInvalidHexNeverEqualsHex() {
+
+		// "zz" and "7A7A" have the same bytes
+		EpcKey characters = EpcKey.parse("zz");
+		EpcKey hex = EpcKey.parse("7A7A");
+
+		assertTrue(Arrays.equals(characters.toBytes(), hex.toBytes()));
+		assertFalse(characters.equals(hex));
+		assertFalse(hex.equals(characters));
+		assertFalse(characters.hashCode() == hex.hashCode());
+	}
+
+	public void testInvalidHexIsUtf8() throws Exception {
+
+		EpcKey key = EpcKey.parse("\u00e9t\u00e9");
+
+		assertTrue(Arrays.equals("\u00e9t\u00e9".getBytes("UTF-8"), key.toBytes()));
+		assertEquals("\u00e9t\u00e9", key.toString());
+	}
+
+	public void testOfCharactersEqualsParse() throws Exception {
+
+		byte[] buffer = ("xx" + "_return1770481064" + "yy").getBytes("UTF-8");
+
+		EpcKey key = EpcKey.ofCharacters(buffer, 2, buffer.length - 4);
+
+		assertEquals(EpcKey.parse("_return1770481064"), key);
+		assertEquals(EpcKey.parse("_return1770481064").hashCode(), key.hashCode());
+		assertEquals("_return1770481064", key.toString());
+		assertFalse(key.equals(EpcKey.of(buffer, 2, buffer.length - 4)));
+	}
+
+	public void testToHexStrings() {
+
+		String[] ids = EpcKey.toHexStrings(new EpcKey[] { EpcKey.parse("01"), EpcKey.parse("ff") });
+
+		assertEquals(Arrays.asList("01", "ff"), Arrays.asList(ids));
+	}
+}
@@ -0,0 +1,148 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.fosstrak.hal.HardwareException;
+
+/**
+ * @author David Figueroa
+ */
+public class InventoryCoalescerTest extends TestCase {
+
+	private final InventoryMetrics metrics = new InventoryMetrics();
+	private final InventoryDelta delta = new InventoryDelta();
+	private final AtomicInteger rounds = new AtomicInteger();
+
+	/**
+	 * Applies the delta to a fixed inventory, once the second caller has
+	 * joined the round
+	 */
+	private final InventoryCoalescer<InventoryDelta.Changes> coalescer = new InventoryCoalescer<InventoryDelta.Changes>(
+			new InventoryCoalescer.Round<InventoryDelta.Changes>() {
+
+				public InventoryDelta.Changes run(String sourceName) throws HardwareException {
+
+					rounds.incrementAndGet();
+					awaitCoalesced(1);
+
+					return delta.update(sourceName, new EpcKey[] { TagSetTest.key(1), TagSetTest.key(2) });
+				}
+			}, metrics);
+
+	public void testTwoCallersShareOneRound() throws Exception {
+
+		Caller first = new Caller();
+		Caller second = new Caller();
+
+		first.start();
+		awaitRounds(1);
+		second.start();
+
+		first.join(5000);
+		second.join(5000);
+
+		assertNull(first.failure);
+		assertNull(second.failure);
+
+		// the delta saw the round once and both callers got its changes
+		assertEquals(1, rounds.get());
+		assertEquals(1, metrics.getCoalesced());
+		assertSame(first.changes, second.changes);
+		assertEquals(2, first.changes.appeared.length);
+	}
+
+	public void testSequentialCallsRunTheirOwnRounds() throws Exception {
+
+		// no caller joins, the rounds need not wait
+		metrics.recordCoalesced("other");
+
+		coalescer.get("single");
+		InventoryDelta.Changes changes = coalescer.get("single");
+
+		assertEquals(2, rounds.get());
+		assertEquals(0, changes.appeared.length);
+	}
+
+	public void testFailureReachesEveryCaller() throws Exception {
+
+		final CountDownLatch joined = new CountDownLatch(1);
+
+		final InventoryCoalescer<String> failing = new InventoryCoalescer<String>(new InventoryCoalescer.Round<String>() {
+
+			public String run(String sourceName) throws HardwareException {
+				try {
+					joined.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				throw new HardwareException("reader gone");
+			}
+		}, metrics);
+
+		final HardwareException[] failures = new HardwareException[2];
+
+		Thread[] threads = new Thread[2];
+
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						failing.get("rp");
+					} catch (HardwareException e) {
+						failures[index] = e;
+					}
+				}
+			};
+		}
+
+		threads[0].start();
+		threads[1].start();
+		awaitCoalesced(1);
+		joined.countDown();
+
+		threads[0].join(5000);
+		threads[1].join(5000);
+
+		assertEquals("reader gone", failures[0].getMessage());
+		assertEquals("reader gone", failures[1].getMessage());
+	}
+
+	private void awaitRounds(int count) {
+		long deadline = System.currentTimeMillis() + 5000;
+
+		while (rounds.get() < count && System.currentTimeMillis() < deadline) {
+			Thread.yield();
+		}
+	}
+
+	private void awaitCoalesced(long count) {
+		long deadline = System.currentTimeMillis() + 5000;
+
+		while (metrics.getCoalesced() < count && System.currentTimeMillis() < deadline) {
+			Thread.yield();
+		}
+	}
+
+	private class Caller extends Thread {
+
+		private InventoryDelta.Changes changes;
+		private Throwable failure;
+
+		public void run() {
+			try {
+				changes = coalescer.get("rp");
+			} catch (Throwable e) {
+				failure = e;
+			}
+		}
+	}
+}
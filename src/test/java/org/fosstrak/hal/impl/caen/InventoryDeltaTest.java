@@ -0,0 +1,57 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import junit.framework.TestCase;
+
+/**
+ * @author David Figueroa
+ */
+public class InventoryDeltaTest extends TestCase {
+
+	public void testChangesAreHexIds() {
+
+		InventoryDelta delta = new InventoryDelta();
+
+		InventoryDelta.Changes first = delta.update("rp", new EpcKey[] { TagSetTest.key(1), TagSetTest.key(2) });
+
+		assertEquals(2, first.appeared.length);
+		assertEquals(0, first.gone.length);
+
+		InventoryDelta.Changes second = delta.update("rp", new EpcKey[] { TagSetTest.key(2), TagSetTest.key(3) });
+
+		assertEquals(Arrays.asList(TagSetTest.key(3).toString()), Arrays.asList(second.appeared));
+
+		// gone ids are plain EPCs, reported apart from the appeared ones
+		assertEquals(Arrays.asList(TagSetTest.key(1).toString()), Arrays.asList(second.gone));
+	}
+
+	public void testReadPointsAreIndependent() {
+
+		InventoryDelta delta = new InventoryDelta();
+
+		delta.update("rp1", new EpcKey[] { TagSetTest.key(1) });
+		InventoryDelta.Changes changes = delta.update("rp2", new EpcKey[] { TagSetTest.key(1) });
+
+		assertEquals(1, changes.appeared.length);
+		assertEquals(0, changes.gone.length);
+	}
+
+	public void testClearReportsInFull() {
+
+		InventoryDelta delta = new InventoryDelta();
+
+		delta.update("rp", new EpcKey[] { TagSetTest.key(1), TagSetTest.key(2) });
+		delta.clear();
+
+		InventoryDelta.Changes changes = delta.update("rp", new EpcKey[] { TagSetTest.key(1), TagSetTest.key(2) });
+
+		assertEquals(new HashSet<String>(Arrays.asList(TagSetTest.key(1).toString(), TagSetTest.key(2).toString())),
+				new HashSet<String>(Arrays.asList(changes.appeared)));
+		assertEquals(0, changes.gone.length);
+	}
+}
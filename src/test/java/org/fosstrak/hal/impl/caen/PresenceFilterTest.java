@@ -0,0 +1,246 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.fosstrak.hal.TagDescriptor;
+
+/**
+ * @author David Figueroa
+ */
+public class PresenceFilterTest extends TestCase {
+
+	private final PresenceFilter filter = new PresenceFilter();
+
+	public void testDisabledByDefault() {
+
+		assertFalse(filter.isEnabled());
+
+		filter.configure(2, 0);
+		assertTrue(filter.isEnabled());
+
+		filter.configure(0, 1000);
+		assertTrue(filter.isEnabled());
+
+		filter.configure(0, 0);
+		assertFalse(filter.isEnabled());
+	}
+
+	public void testMissedRounds() {
+
+		filter.configure(2, 0);
+
+		assertEquals(keys(1, 2), present(0, 1, 2));
+
+		// missed once, still present
+		assertEquals(keys(1, 2), present(1, 2));
+
+		// missed twice in a row, gone
+		assertEquals(keys(2), present(2, 2));
+	}
+
+	public void testSeenAgainClearsMisses() {
+
+		filter.configure(2, 0);
+
+		present(0, 1);
+		present(1);
+		present(2, 1);
+		assertEquals(keys(1), present(3));
+
+		// the miss before the tag was seen again does not count
+		assertEquals(keys(), present(4));
+	}
+
+	public void testWindow() {
+
+		filter.configure(0, 1000);
+
+		present(0, 1, 2);
+
+		// the round count does not matter
+		for (int t = 100; t < 1000; t += 100) {
+			assertEquals(keys(1, 2), present(t, 2));
+		}
+
+		assertEquals(keys(2), present(1000, 2));
+	}
+
+	public void testWhicheverComesFirst() {
+
+		filter.configure(5, 1000);
+
+		present(0, 1, 2);
+
+		// one miss only, but unseen for the whole window
+		assertEquals(keys(2), present(1000, 2));
+
+		filter.configure(2, 100000);
+
+		present(0, 1);
+		present(1);
+
+		// within the window, but missed twice
+		assertEquals(keys(), present(2));
+	}
+
+	public void testReadPointsAreIndependent() {
+
+		filter.configure(1, 0);
+
+		filter.update("rp1", new EpcKey[] { TagSetTest.key(1) }, null, 0);
+		PresenceFilter.Presence presence = filter.update("rp2", new EpcKey[0], null, 0);
+
+		assertEquals(0, presence.ids.length);
+	}
+
+	public void testConfigureForgetsTags() {
+
+		filter.configure(3, 0);
+		present(0, 1);
+
+		filter.configure(3, 0);
+
+		assertEquals(keys(), present(1));
+	}
+
+	public void testDescriptors() {
+
+		filter.configure(2, 0);
+
+		TagDescriptor first = new TagDescriptor(null, null);
+		TagDescriptor second = new TagDescriptor(null, null);
+
+		filter.update("rp", new EpcKey[] { TagSetTest.key(1), TagSetTest.key(2) },
+				new TagDescriptor[] { first, second }, 0);
+
+		// the missed tag keeps the descriptor it was last seen with
+		PresenceFilter.Presence presence = filter.update("rp", new EpcKey[] { TagSetTest.key(2) },
+				new TagDescriptor[] { second }, 1);
+
+		assertEquals(2, presence.ids.length);
+		assertNotNull(presence.descriptors);
+
+		for (int i = 0; i < presence.ids.length; i++) {
+			assertSame(presence.ids[i].equals(TagSetTest.key(1)) ? first : second, presence.descriptors[i]);
+		}
+
+		// a tag without descriptor drops them all
+		presence = filter.update("rp", new EpcKey[] { TagSetTest.key(3) }, null, 2);
+
+		assertEquals(keys(2, 3), new HashSet<EpcKey>(Arrays.asList(presence.ids)));
+		assertNull(presence.descriptors);
+	}
+
+	public void testManyTagsLeaveTogether() {
+
+		filter.configure(1, 0);
+
+		EpcKey[] many = new EpcKey[1000];
+
+		for (int i = 0; i < many.length; i++) {
+			many[i] = TagSetTest.key(i);
+		}
+
+		filter.update("rp", many, null, 0);
+
+		// every slot but one is deleted in the same sweep
+		PresenceFilter.Presence presence = filter.update("rp", new EpcKey[] { many[500] }, null, 1);
+
+		assertEquals(Arrays.asList(many[500]), Arrays.asList(presence.ids));
+
+		presence = filter.update("rp", many, null, 2);
+		assertEquals(1000, new HashSet<EpcKey>(Arrays.asList(presence.ids)).size());
+	}
+
+	/**
+	 * Random rounds against a plain map of the last seen time and misses,
+	 * deleting entries of long probe sequences during the sweep
+	 */
+	public void testRandomRounds() {
+
+		int maxMissedRounds = 3;
+		long window = 250;
+
+		filter.configure(maxMissedRounds, window);
+
+		Random random = new Random(7);
+		Map<EpcKey, long[]> expected = new HashMap<EpcKey, long[]>();
+
+		for (int round = 0; round < 1000; round++) {
+
+			long now = round * 40L + random.nextInt(40);
+
+			// a population moving through the field
+			int base = round / 5;
+			EpcKey[] ids = new EpcKey[random.nextInt(60)];
+
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = TagSetTest.key(base + random.nextInt(120));
+			}
+
+			PresenceFilter.Presence presence = filter.update("rp", ids, null, now);
+
+			// last seen, misses
+			for (EpcKey id : ids) {
+				expected.put(id, new long[] { now, -1 });
+			}
+
+			for (Iterator<long[]> it = expected.values().iterator(); it.hasNext();) {
+				long[] tag = it.next();
+				tag[1]++;
+
+				if (tag[1] >= maxMissedRounds || now - tag[0] >= window) {
+					it.remove();
+				}
+			}
+
+			Set<EpcKey> actual = new HashSet<EpcKey>(Arrays.asList(presence.ids));
+
+			assertEquals(expected.size(), presence.ids.length);
+			assertEquals(expected.keySet(), actual);
+		}
+	}
+
+	/**
+	 * Runs a round of read point rp at the given time
+	 *
+	 * @return the present tags
+	 */
+	private Set<EpcKey> present(long now, int... tags) {
+
+		EpcKey[] ids = new EpcKey[tags.length];
+
+		for (int i = 0; i < tags.length; i++) {
+			ids[i] = TagSetTest.key(tags[i]);
+		}
+
+		PresenceFilter.Presence presence = filter.update("rp", ids, null, now);
+		Set<EpcKey> present = new HashSet<EpcKey>(Arrays.asList(presence.ids));
+
+		assertEquals("duplicate present tags", presence.ids.length, present.size());
+
+		return present;
+	}
+
+	private static Set<EpcKey> keys(int... tags) {
+
+		Set<EpcKey> keys = new HashSet<EpcKey>();
+
+		for (int tag : tags) {
+			keys.add(TagSetTest.key(tag));
+		}
+
+		return keys;
+	}
+}
@@ -0,0 +1,102 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.fosstrak.hal.HardwareException;
+
+/**
+ * @author David Figueroa
+ */
+public class ReconnectSupervisorTest extends TestCase {
+
+	/**
+	 * Reader that fails to connect until told otherwise
+	 */
+	private static class Reader implements ReconnectSupervisor.Target {
+
+		final AtomicInteger attempts = new AtomicInteger();
+		volatile boolean available = false;
+		volatile boolean connected = false;
+
+		public boolean isConnected() {
+			return connected;
+		}
+
+		public String[] getCandidatePorts() {
+			return new String[] { "COM1", "COM2" };
+		}
+
+		public void connect(String port) throws HardwareException {
+			attempts.incrementAndGet();
+
+			if (!available) {
+				throw new HardwareException("no reader on " + port);
+			}
+			connected = true;
+		}
+	}
+
+	public void testReconnects() throws Exception {
+
+		Reader reader = new Reader();
+		ReconnectSupervisor supervisor = new ReconnectSupervisor("test", reader);
+		supervisor.setBackoff(1, 5);
+
+		reader.available = true;
+		supervisor.requestReconnect();
+
+		awaitStopped(supervisor);
+
+		assertTrue(reader.connected);
+		assertEquals(1, supervisor.getReconnects());
+	}
+
+	public void testShutdownStopsTheThread() throws Exception {
+
+		Reader reader = new Reader();
+		ReconnectSupervisor supervisor = new ReconnectSupervisor("test", reader);
+		supervisor.setBackoff(1, 5);
+
+		supervisor.requestReconnect();
+		assertTrue(supervisor.isReconnecting());
+
+		assertTrue(supervisor.shutdown(5000));
+		assertFalse(supervisor.isReconnecting());
+
+		// no attempt once the thread has ended
+		int attempts = reader.attempts.get();
+		reader.available = true;
+		Thread.sleep(50);
+
+		assertEquals(attempts, reader.attempts.get());
+		assertFalse(reader.connected);
+	}
+
+	public void testNoReconnectAfterShutdown() throws Exception {
+
+		Reader reader = new Reader();
+		ReconnectSupervisor supervisor = new ReconnectSupervisor("test", reader);
+
+		assertTrue(supervisor.shutdown(5000));
+
+		reader.available = true;
+		supervisor.requestReconnect();
+
+		assertFalse(supervisor.isReconnecting());
+		Thread.sleep(50);
+		assertEquals(0, reader.attempts.get());
+	}
+
+	private static void awaitStopped(ReconnectSupervisor supervisor) {
+		long deadline = System.currentTimeMillis() + 5000;
+
+		while (supervisor.isReconnecting() && System.currentTimeMillis() < deadline) {
+			Thread.yield();
+		}
+	}
+}
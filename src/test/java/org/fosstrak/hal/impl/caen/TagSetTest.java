@@ -0,0 +1,161 @@
+/**
+ *
+ */
+package org.fosstrak.hal.impl.caen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * @author David Figueroa
+ */
+public class TagSetTest extends TestCase {
+
+	private TagSet set;
+	private List<EpcKey> appeared;
+	private List<EpcKey> gone;
+
+	protected void setUp() {
+		set = new TagSet();
+		appeared = new ArrayList<EpcKey>();
+		gone = new ArrayList<EpcKey>();
+	}
+
+	public void testFirstRoundAppears() {
+
+		update(key(1), key(2), key(3));
+
+		assertEquals(keys(key(1), key(2), key(3)), new HashSet<EpcKey>(appeared));
+		assertTrue(gone.isEmpty());
+		assertEquals(3, set.size());
+	}
+
+	public void testSameRoundHasNoChanges() {
+
+		update(key(1), key(2));
+		update(key(2), key(1));
+
+		assertTrue(appeared.isEmpty());
+		assertTrue(gone.isEmpty());
+		assertEquals(2, set.size());
+	}
+
+	public void testAppearedAndGone() {
+
+		update(key(1), key(2), key(3));
+		update(key(2), key(4));
+
+		assertEquals(keys(key(4)), new HashSet<EpcKey>(appeared));
+		assertEquals(keys(key(1), key(3)), new HashSet<EpcKey>(gone));
+		assertEquals(2, set.size());
+		assertTrue(set.contains(key(2)));
+		assertFalse(set.contains(key(1)));
+	}
+
+	public void testEmptyRoundRemovesAll() {
+
+		update(key(1), key(2));
+		update();
+
+		assertEquals(keys(key(1), key(2)), new HashSet<EpcKey>(gone));
+		assertEquals(0, set.size());
+	}
+
+	public void testDuplicatesInRound() {
+
+		update(key(1), key(1), key(2));
+
+		assertEquals(2, appeared.size());
+		assertEquals(2, set.size());
+
+		update(key(2), key(2));
+
+		assertEquals(keys(key(1)), new HashSet<EpcKey>(gone));
+		assertEquals(1, set.size());
+	}
+
+	public void testGrowAndShrink() {
+
+		EpcKey[] many = new EpcKey[1000];
+
+		for (int i = 0; i < many.length; i++) {
+			many[i] = key(i);
+		}
+
+		update(many);
+		assertEquals(1000, appeared.size());
+
+		update(key(7));
+		assertEquals(999, gone.size());
+		assertEquals(1, set.size());
+		assertTrue(set.contains(key(7)));
+
+		// freed entries are reused
+		update(many);
+		assertEquals(999, appeared.size());
+		assertEquals(1000, set.size());
+	}
+
+	/**
+	 * Random rounds against HashSet differences
+	 */
+	public void testRandomRounds() {
+
+		Random random = new Random(42);
+		Set<EpcKey> previous = new HashSet<EpcKey>();
+
+		for (int round = 0; round < 500; round++) {
+
+			EpcKey[] ids = new EpcKey[random.nextInt(round % 50 == 0 ? 1000 : 100)];
+
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = key(random.nextInt(300));
+			}
+
+			update(ids);
+
+			Set<EpcKey> current = new HashSet<EpcKey>(Arrays.asList(ids));
+
+			Set<EpcKey> expectedAppeared = new HashSet<EpcKey>(current);
+			expectedAppeared.removeAll(previous);
+
+			Set<EpcKey> expectedGone = new HashSet<EpcKey>(previous);
+			expectedGone.removeAll(current);
+
+			assertEquals(expectedAppeared, new HashSet<EpcKey>(appeared));
+			assertEquals(expectedAppeared.size(), appeared.size());
+			assertEquals(expectedGone, new HashSet<EpcKey>(gone));
+			assertEquals(expectedGone.size(), gone.size());
+			assertEquals(current.size(), set.size());
+
+			for (EpcKey id : current) {
+				assertTrue(set.contains(id));
+			}
+
+			previous = current;
+		}
+	}
+
+	private void update(EpcKey... round) {
+		appeared.clear();
+		gone.clear();
+		set.update(round, appeared, gone);
+	}
+
+	private static Set<EpcKey> keys(EpcKey... keys) {
+		return new HashSet<EpcKey>(Arrays.asList(keys));
+	}
+
+	/**
+	 * 96 bit EPC ending with n
+	 */
+	static EpcKey key(int n) {
+		return EpcKey.parse(String.format("3008000000000000%08X", n));
+	}
+}